@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates the {@code RowMapper} implementations for the entity classes
+ * which have {@code Column} fields.
+ * <p>
+ * The generated mapper assigns the public fields directly, so the mapping
+ * does not need reflection. The columns are ordered in the same way as
+ * {@code FieldOrderComparator}, and the values are converted in the same way
+ * as the built-in codecs of {@code ColumnCodecs}. If the entity cannot be
+ * mapped directly (it is not public, has no public default constructor, or
+ * has a column of the type the built-in codecs do not support), no mapper is
+ * generated and the reflection is used at runtime.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+@SupportedAnnotationTypes(RowMapperProcessor.COLUMN)
+public final class RowMapperProcessor extends AbstractProcessor {
+    /** Qualified name of the {@code Column} annotation. */
+    static final String COLUMN = "android.fastroid.entity.annotation.Column";
+
+    /** Qualified name of the {@code Order} annotation. */
+    private static final String ORDER = "android.fastroid.entity.annotation.Order";
+
+    /** Qualified name of the {@code Enumerated} annotation. */
+    private static final String ENUMERATED = "android.fastroid.entity.annotation.Enumerated";
+
+    /** Suffix of the generated class name. */
+    private static final String SUFFIX = "$$RowMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations,
+            final RoundEnvironment roundEnv) {
+        final TypeElement column = processingEnv.getElementUtils().getTypeElement(COLUMN);
+        if (column == null) {
+            return false;
+        }
+        final Set<TypeElement> entities = new LinkedHashSet<TypeElement>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(column)) {
+            if (element.getKind() == ElementKind.FIELD) {
+                entities.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement entity : entities) {
+            if (isMappable(entity)) {
+                try {
+                    generate(entity);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Kind.ERROR,
+                            "Failed to generate the row mapper: " + e.getMessage(), entity);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the entity can be created and mapped by the generated
+     * code or not.
+     * 
+     * @param entity entity class
+     * @return true if the mapper can be generated
+     */
+    private boolean isMappable(final TypeElement entity) {
+        if (!entity.getModifiers().contains(Modifier.PUBLIC)
+                || entity.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        if (entity.getNestingKind().isNested()
+                && !entity.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity
+                .getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the row mapper source of the entity.
+     * 
+     * @param entity entity class
+     * @throws IOException if the source cannot be written
+     */
+    private void generate(final TypeElement entity) throws IOException {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(entity);
+        final String packageName = pkg.getQualifiedName().toString();
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(entity)
+                .toString();
+        final String mapperName = binaryName.substring(packageName.length() == 0 ? 0
+                : packageName.length() + 1) + SUFFIX;
+        final String entityName = entity.getQualifiedName().toString();
+        final List<VariableElement> fields = getColumnFields(entity);
+        final List<String> statements = new ArrayList<String>();
+        final List<String> constants = new ArrayList<String>();
+        for (int i = 0; i < fields.size(); i++) {
+            final VariableElement field = fields.get(i);
+            final String expression = getReadExpression(field, i, constants);
+            if (expression == null) {
+                processingEnv.getMessager().printMessage(Kind.NOTE,
+                        "Row mapper is not generated because the type is not supported: "
+                                + field.asType(), field);
+                return;
+            }
+            statements.add("        if (columnIndexes[" + i + "] >= 0) {");
+            statements.add("            entity." + field.getSimpleName() + " = " + expression
+                    + ";");
+            statements.add("        }");
+        }
+
+        final JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.length() == 0 ? mapperName : packageName + "." + mapperName,
+                entity);
+        final PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            if (packageName.length() > 0) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/** Generated by " + getClass().getName() + ". Do not modify. */");
+            out.println("public final class " + mapperName
+                    + " implements android.fastroid.entity.RowMapper<" + entityName + "> {");
+            out.println("    private static final String[] COLUMN_NAMES = {");
+            for (VariableElement field : fields) {
+                out.println("        \"" + toDbName(field.getSimpleName().toString()) + "\",");
+            }
+            out.println("    };");
+            for (String constant : constants) {
+                out.println(constant);
+            }
+            out.println();
+            out.println("    @Override");
+            out.println("    public String[] getColumnNames() {");
+            out.println("        return COLUMN_NAMES.clone();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + entityName + " newInstance() {");
+            out.println("        return new " + entityName + "();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void map(final android.database.Cursor cursor,");
+            out.println("            final int[] columnIndexes, final " + entityName
+                    + " entity) {");
+            for (String statement : statements) {
+                out.println(statement);
+            }
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the public {@code Column} fields of the entity and its super
+     * classes, sorted in the same way as {@code FieldOrderComparator}.
+     * 
+     * @param entity entity class
+     * @return column fields
+     */
+    private List<VariableElement> getColumnFields(final TypeElement entity) {
+        final List<VariableElement> fields = new ArrayList<VariableElement>();
+        TypeElement type = entity;
+        while (type != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.PUBLIC)
+                        && getAnnotation(field, COLUMN) != null) {
+                    fields.add(field);
+                }
+            }
+            final TypeMirror superclass = type.getSuperclass();
+            if (superclass.getKind() == TypeKind.DECLARED) {
+                type = (TypeElement) ((DeclaredType) superclass).asElement();
+            } else {
+                type = null;
+            }
+        }
+        Collections.sort(fields, new Comparator<VariableElement>() {
+            @Override
+            public int compare(final VariableElement object1, final VariableElement object2) {
+                final Integer order1 = getOrder(object1);
+                final Integer order2 = getOrder(object2);
+                if (order1 != null && order2 != null) {
+                    return order1.intValue() - order2.intValue();
+                } else if (order1 == null && order2 != null) {
+                    return 1;
+                } else if (order1 != null && order2 == null) {
+                    return -1;
+                }
+                return object1.getSimpleName().toString()
+                        .compareTo(object2.getSimpleName().toString());
+            }
+        });
+        return fields;
+    }
+
+    /**
+     * Returns the value of the {@code Order} annotation of the field.
+     * 
+     * @param field target field
+     * @return order, or {@code null} if the field has no {@code Order}
+     */
+    private Integer getOrder(final VariableElement field) {
+        final AnnotationMirror order = getAnnotation(field, ORDER);
+        if (order == null) {
+            return null;
+        }
+        for (AnnotationValue value : order.getElementValues().values()) {
+            return (Integer) value.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the annotation of the element by its qualified name.
+     * 
+     * @param element target element
+     * @param annotationName qualified name of the annotation
+     * @return annotation, or {@code null} if the element does not have it
+     */
+    private AnnotationMirror getAnnotation(final Element element, final String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the expression which reads the field value from the cursor.
+     * 
+     * @param field column field
+     * @param i index of the column
+     * @param constants declarations of the constants used by the expression
+     * @return expression, or {@code null} if the type is not supported
+     */
+    private String getReadExpression(final VariableElement field, final int i,
+            final List<String> constants) {
+        final TypeMirror type = field.asType();
+        final String index = "columnIndexes[" + i + "]";
+        switch (type.getKind()) {
+            case LONG:
+                return "cursor.getLong(" + index + ")";
+            case INT:
+                return "cursor.getInt(" + index + ")";
+            case SHORT:
+                return "cursor.getShort(" + index + ")";
+            case BYTE:
+                return "(byte) cursor.getInt(" + index + ")";
+            case BOOLEAN:
+                return "cursor.getInt(" + index + ") != 0";
+            case DOUBLE:
+                return "cursor.getDouble(" + index + ")";
+            case FLOAT:
+                return "cursor.getFloat(" + index + ")";
+            case ARRAY:
+                if ("byte[]".equals(type.toString())) {
+                    return nullable(index, "cursor.getBlob(" + index + ")");
+                }
+                return null;
+            case DECLARED:
+                return getDeclaredReadExpression(field, i, index, constants);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the expression which reads the value of the reference type from
+     * the cursor.
+     * 
+     * @param field column field
+     * @param i index of the column
+     * @param index expression of the cursor index
+     * @param constants declarations of the constants used by the expression
+     * @return expression, or {@code null} if the type is not supported
+     */
+    private String getDeclaredReadExpression(final VariableElement field, final int i,
+            final String index, final List<String> constants) {
+        final TypeElement typeElement = (TypeElement) ((DeclaredType) field.asType())
+                .asElement();
+        final String typeName = typeElement.getQualifiedName().toString();
+        if (typeElement.getKind() == ElementKind.ENUM) {
+            final AnnotationMirror enumerated = getAnnotation(field, ENUMERATED);
+            boolean ordinal = true;
+            if (enumerated != null) {
+                for (AnnotationValue value : enumerated.getElementValues().values()) {
+                    ordinal = !"STRING".equals(value.getValue().toString());
+                }
+            }
+            if (ordinal) {
+                constants.add("    private static final " + typeName + "[] VALUES_" + i
+                        + " = " + typeName + ".values();");
+                return nullable(index, "VALUES_" + i + "[cursor.getInt(" + index + ")]");
+            }
+            return nullable(index, typeName + ".valueOf(cursor.getString(" + index + "))");
+        }
+        final String read;
+        if ("java.lang.String".equals(typeName)) {
+            read = "cursor.getString(" + index + ")";
+        } else if ("java.lang.Long".equals(typeName)) {
+            read = "Long.valueOf(cursor.getLong(" + index + "))";
+        } else if ("java.lang.Integer".equals(typeName)) {
+            read = "Integer.valueOf(cursor.getInt(" + index + "))";
+        } else if ("java.lang.Short".equals(typeName)) {
+            read = "Short.valueOf(cursor.getShort(" + index + "))";
+        } else if ("java.lang.Byte".equals(typeName)) {
+            read = "Byte.valueOf((byte) cursor.getInt(" + index + "))";
+        } else if ("java.lang.Boolean".equals(typeName)) {
+            read = "Boolean.valueOf(cursor.getInt(" + index + ") != 0)";
+        } else if ("java.lang.Double".equals(typeName)) {
+            read = "Double.valueOf(cursor.getDouble(" + index + "))";
+        } else if ("java.lang.Float".equals(typeName)) {
+            read = "Float.valueOf(cursor.getFloat(" + index + "))";
+        } else if ("java.util.Date".equals(typeName)) {
+            read = "new java.util.Date(cursor.getLong(" + index + "))";
+        } else {
+            return null;
+        }
+        return nullable(index, read);
+    }
+
+    /**
+     * Wraps the expression to return {@code null} for NULL.
+     * 
+     * @param index expression of the cursor index
+     * @param read expression which reads the non-null value
+     * @return expression
+     */
+    private static String nullable(final String index, final String read) {
+        return "cursor.isNull(" + index + ") ? null : " + read;
+    }
+
+    /**
+     * Convert the field name to the column name in the same way as the
+     * runtime.
+     * 
+     * @param name name to convert
+     * @return converted name
+     */
+    private static String toDbName(final String name) {
+        final StringBuilder dbName = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if ('A' <= c && c <= 'Z') {
+                dbName.append('_');
+            }
+            dbName.append(c);
+        }
+        if (dbName.length() > 0 && dbName.charAt(0) == '_') {
+            dbName.deleteCharAt(0);
+        }
+        return dbName.toString().toUpperCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Invalidates {@link EntityCache} and {@link QueryCache} when the rows are
+ * written.
+ * <p>
+ * The caches are invalidated as soon as the row is written, so that the
+ * writing thread does not read the stale entries. If the row is written in a
+ * transaction, another thread may still read the previous committed values
+ * until the commit, and cache them with the new version; especially with the
+ * read-only connections of {@link ConnectionManager}. So the invalidations in
+ * a transaction are repeated when the outermost transaction of the thread
+ * ends, which rejects the values read before the commit.
+ * <p>
+ * A scope of a transaction is bound to the thread which executes it.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class CacheInvalidator {
+    /** Scope of the transaction executed in the current thread. */
+    private static final ThreadLocal<CacheInvalidator> TRANSACTION =
+            new ThreadLocal<CacheInvalidator>();
+
+    /** Primary keys of the entities written in the transaction by class. */
+    private final Map<Class<?>, Set<List<String>>> mPendingEntities =
+            new HashMap<Class<?>, Set<List<String>>>();
+
+    /** Names of the tables written in the transaction. */
+    private final Set<String> mPendingTables = new HashSet<String>();
+
+    /** Nesting level of the transactions. */
+    private int mDepth;
+
+    /**
+     * Creates a scope.<br>
+     * This is hidden from outside the class because the scopes are created
+     * by {@link #beginTransaction()}.
+     */
+    private CacheInvalidator() {
+    }
+
+    /**
+     * Starts the scope of the transaction in the current thread.<br>
+     * The nested transactions share the scope of the outermost transaction.
+     */
+    static void beginTransaction() {
+        CacheInvalidator scope = TRANSACTION.get();
+        if (scope == null) {
+            scope = new CacheInvalidator();
+            TRANSACTION.set(scope);
+        }
+        scope.mDepth++;
+    }
+
+    /**
+     * Ends the scope of the transaction in the current thread.<br>
+     * This must be called after the transaction of the database is ended.
+     * When the outermost transaction ends, the invalidations in it are
+     * repeated.
+     */
+    static void endTransaction() {
+        final CacheInvalidator scope = TRANSACTION.get();
+        if (scope == null) {
+            return;
+        }
+        scope.mDepth--;
+        if (scope.mDepth > 0) {
+            return;
+        }
+        TRANSACTION.remove();
+        for (Map.Entry<Class<?>, Set<List<String>>> entry : scope.mPendingEntities.entrySet()) {
+            for (List<String> ids : entry.getValue()) {
+                EntityCache.invalidate(entry.getKey(), ids);
+            }
+        }
+        for (String tableName : scope.mPendingTables) {
+            QueryCache.invalidate(tableName);
+        }
+    }
+
+    /**
+     * Removes the written entity from {@link EntityCache}, and repeats it at
+     * the end of the transaction if the current thread is in a transaction.
+     * 
+     * @param entityClass class of the written entity
+     * @param ids values of the primary keys of the written entity
+     */
+    static void invalidateEntity(final Class<?> entityClass, final List<String> ids) {
+        EntityCache.invalidate(entityClass, ids);
+        final CacheInvalidator scope = TRANSACTION.get();
+        if (scope != null) {
+            Set<List<String>> pending = scope.mPendingEntities.get(entityClass);
+            if (pending == null) {
+                pending = new HashSet<List<String>>();
+                scope.mPendingEntities.put(entityClass, pending);
+            }
+            pending.add(ids);
+        }
+    }
+
+    /**
+     * Removes the results of the written table from {@link QueryCache}, and
+     * repeats it at the end of the transaction if the current thread is in a
+     * transaction.
+     * 
+     * @param tableName name of the written table
+     */
+    static void invalidateTable(final String tableName) {
+        QueryCache.invalidate(tableName);
+        final CacheInvalidator scope = TRANSACTION.get();
+        if (scope != null) {
+            scope.mPendingTables.add(tableName);
+        }
+    }
+}
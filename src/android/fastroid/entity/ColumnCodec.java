@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.lang.reflect.Field;
+
+/**
+ * Converts the value of a field from/to the value of a database column.
+ * <p>
+ * The codec is resolved once for each field by {@link ColumnCodecs}. Register
+ * the codecs for the custom types by
+ * {@link ColumnCodecs#register(Class, ColumnCodec)}. The implementations must
+ * be thread-safe.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public interface ColumnCodec {
+    /**
+     * Reads the column value from the current row of the cursor, and sets it
+     * to the field of the entity.
+     * 
+     * @param cursor the opened cursor
+     * @param index index of the column in the cursor
+     * @param field field to set
+     * @param entity entity to set the value
+     * @throws IllegalAccessException if the field is not accessible
+     */
+    void read(Cursor cursor, int index, Field field, Object entity)
+            throws IllegalAccessException;
+
+    /**
+     * Binds the field value of the entity to the statement.
+     * 
+     * @param statement compiled statement
+     * @param index index of the parameter, starting from 1
+     * @param field field to get
+     * @param entity entity to get the value
+     * @throws IllegalAccessException if the field is not accessible
+     */
+    void bind(SQLiteStatement statement, int index, Field field, Object entity)
+            throws IllegalAccessException;
+
+    /**
+     * Returns the field value of the entity as the database value.
+     * 
+     * @param field field to get
+     * @param entity entity to get the value
+     * @return {@code Long}, {@code Double}, {@code String}, {@code byte[]} or
+     *         {@code null}
+     * @throws IllegalAccessException if the field is not accessible
+     */
+    Object toDatabaseValue(Field field, Object entity) throws IllegalAccessException;
+
+    /**
+     * Returns the SQL type of the column which this codec stores the values
+     * as.<br>
+     * {@link Schema} declares the column with this type.
+     * 
+     * @return {@code INTEGER}, {@code REAL}, {@code TEXT}, {@code BLOB}, or
+     *         {@code null} to declare the column without type
+     */
+    String getSqlType();
+}
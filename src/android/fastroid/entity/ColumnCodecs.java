@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+import android.fastroid.entity.annotation.EnumType;
+import android.fastroid.entity.annotation.Enumerated;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the {@link ColumnCodec} by the Java type.
+ * <p>
+ * The following types are supported by default.
+ * <ul>
+ * <li>{@code long}, {@code int}, {@code short}, {@code byte} and
+ * {@code boolean} as INTEGER, without boxing</li>
+ * <li>{@code double} and {@code float} as REAL, without boxing</li>
+ * <li>the boxed types of the above, which are {@code null} for NULL</li>
+ * <li>{@code String} as TEXT, and {@code byte[]} as BLOB</li>
+ * <li>{@code java.util.Date} as INTEGER of the epoch milliseconds</li>
+ * <li>enums as INTEGER of the ordinal, or as TEXT of the name if the field is
+ * annotated with {@link Enumerated} of {@link EnumType#STRING}</li>
+ * </ul>
+ * The fields of the other types are not read from the database, and are
+ * written as the strings.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class ColumnCodecs {
+    /** Codecs by the Java type. */
+    private static final Map<Class<?>, ColumnCodec> CODECS =
+            new ConcurrentHashMap<Class<?>, ColumnCodec>();
+
+    /** Codec of the types which are not supported. */
+    private static final ColumnCodec UNSUPPORTED = new BuiltInCodec(null) {
+        @Override
+        public void read(final Cursor cursor, final int index, final Field field,
+                final Object entity) {
+            // Not supported
+        }
+
+        @Override
+        public Object toDatabaseValue(final Field field, final Object entity)
+                throws IllegalAccessException {
+            final Object value = field.get(entity);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        Object toDatabase(final Object value) {
+            return value.toString();
+        }
+    };
+
+    static {
+        CODECS.put(long.class, new IntegerCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setLong(entity, cursor.getLong(index));
+            }
+        });
+        CODECS.put(int.class, new IntegerCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setInt(entity, cursor.getInt(index));
+            }
+        });
+        CODECS.put(short.class, new IntegerCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setShort(entity, cursor.getShort(index));
+            }
+        });
+        CODECS.put(byte.class, new IntegerCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setByte(entity, (byte) cursor.getInt(index));
+            }
+        });
+        CODECS.put(boolean.class, new BuiltInCodec("INTEGER") {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setBoolean(entity, cursor.getInt(index) != 0);
+            }
+
+            @Override
+            public void bind(final SQLiteStatement statement, final int index,
+                    final Field field, final Object entity) throws IllegalAccessException {
+                statement.bindLong(index, field.getBoolean(entity) ? 1 : 0);
+            }
+
+            @Override
+            public Object toDatabaseValue(final Field field, final Object entity)
+                    throws IllegalAccessException {
+                return Long.valueOf(field.getBoolean(entity) ? 1 : 0);
+            }
+
+            @Override
+            Object toDatabase(final Object value) {
+                return Long.valueOf(((Boolean) value).booleanValue() ? 1 : 0);
+            }
+        });
+        CODECS.put(double.class, new RealCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setDouble(entity, cursor.getDouble(index));
+            }
+        });
+        CODECS.put(float.class, new RealCodec() {
+            @Override
+            public void read(final Cursor cursor, final int index, final Field field,
+                    final Object entity) throws IllegalAccessException {
+                field.setFloat(entity, cursor.getFloat(index));
+            }
+        });
+        CODECS.put(Long.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Long.valueOf(cursor.getLong(index));
+            }
+        });
+        CODECS.put(Integer.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Integer.valueOf(cursor.getInt(index));
+            }
+        });
+        CODECS.put(Short.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Short.valueOf(cursor.getShort(index));
+            }
+        });
+        CODECS.put(Byte.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Byte.valueOf((byte) cursor.getInt(index));
+            }
+        });
+        CODECS.put(Boolean.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Boolean.valueOf(cursor.getInt(index) != 0);
+            }
+
+            @Override
+            Object toDatabase(final Object value) {
+                return Long.valueOf(((Boolean) value).booleanValue() ? 1 : 0);
+            }
+        });
+        CODECS.put(Double.class, new NullableCodec("REAL") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Double.valueOf(cursor.getDouble(index));
+            }
+        });
+        CODECS.put(Float.class, new NullableCodec("REAL") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return Float.valueOf(cursor.getFloat(index));
+            }
+        });
+        CODECS.put(String.class, new NullableCodec("TEXT") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return cursor.getString(index);
+            }
+        });
+        CODECS.put(byte[].class, new NullableCodec("BLOB") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return cursor.getBlob(index);
+            }
+        });
+        CODECS.put(Date.class, new NullableCodec("INTEGER") {
+            @Override
+            Object fromCursor(final Cursor cursor, final int index) {
+                return new Date(cursor.getLong(index));
+            }
+
+            @Override
+            Object toDatabase(final Object value) {
+                return Long.valueOf(((Date) value).getTime());
+            }
+        });
+    }
+
+    /**
+     * Base class of the built-in codecs.<br>
+     * The generated row mappers are used only if all the columns use the
+     * built-in codecs.
+     */
+    private abstract static class BuiltInCodec implements ColumnCodec {
+        /** SQL type of the column, or {@code null}. */
+        private final String mSqlType;
+
+        /**
+         * Creates the codec.
+         * 
+         * @param sqlType SQL type of the column, or {@code null}
+         */
+        BuiltInCodec(final String sqlType) {
+            mSqlType = sqlType;
+        }
+
+        @Override
+        public String getSqlType() {
+            return mSqlType;
+        }
+
+        @Override
+        public void bind(final SQLiteStatement statement, final int index, final Field field,
+                final Object entity) throws IllegalAccessException {
+            bindValue(statement, index, toDatabaseValue(field, entity));
+        }
+
+        /**
+         * Converts the non-null field value to the database value.
+         * 
+         * @param value field value
+         * @return database value
+         */
+        Object toDatabase(final Object value) {
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return Long.valueOf(((Number) value).longValue());
+            } else if (value instanceof Float) {
+                return Double.valueOf(((Float) value).doubleValue());
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Codec of the primitive integer types stored as INTEGER.
+     */
+    private abstract static class IntegerCodec extends BuiltInCodec {
+        /**
+         * Creates the codec.
+         */
+        IntegerCodec() {
+            super("INTEGER");
+        }
+
+        @Override
+        public void bind(final SQLiteStatement statement, final int index, final Field field,
+                final Object entity) throws IllegalAccessException {
+            statement.bindLong(index, field.getLong(entity));
+        }
+
+        @Override
+        public Object toDatabaseValue(final Field field, final Object entity)
+                throws IllegalAccessException {
+            return Long.valueOf(field.getLong(entity));
+        }
+
+        @Override
+        Object toDatabase(final Object value) {
+            return Long.valueOf(((Number) value).longValue());
+        }
+    }
+
+    /**
+     * Codec of the primitive floating point types stored as REAL.
+     */
+    private abstract static class RealCodec extends BuiltInCodec {
+        /**
+         * Creates the codec.
+         */
+        RealCodec() {
+            super("REAL");
+        }
+
+        @Override
+        public void bind(final SQLiteStatement statement, final int index, final Field field,
+                final Object entity) throws IllegalAccessException {
+            statement.bindDouble(index, field.getDouble(entity));
+        }
+
+        @Override
+        public Object toDatabaseValue(final Field field, final Object entity)
+                throws IllegalAccessException {
+            return Double.valueOf(field.getDouble(entity));
+        }
+
+        @Override
+        Object toDatabase(final Object value) {
+            return Double.valueOf(((Number) value).doubleValue());
+        }
+    }
+
+    /**
+     * Codec of the reference types which are {@code null} for NULL.
+     */
+    private abstract static class NullableCodec extends BuiltInCodec {
+        /**
+         * Creates the codec.
+         * 
+         * @param sqlType SQL type of the column
+         */
+        NullableCodec(final String sqlType) {
+            super(sqlType);
+        }
+
+        @Override
+        public void read(final Cursor cursor, final int index, final Field field,
+                final Object entity) throws IllegalAccessException {
+            if (cursor.isNull(index)) {
+                field.set(entity, null);
+            } else {
+                field.set(entity, fromCursor(cursor, index));
+            }
+        }
+
+        @Override
+        public Object toDatabaseValue(final Field field, final Object entity)
+                throws IllegalAccessException {
+            final Object value = field.get(entity);
+            return value == null ? null : toDatabase(value);
+        }
+
+        /**
+         * Reads the non-null value from the cursor.
+         * 
+         * @param cursor the opened cursor
+         * @param index index of the column
+         * @return field value
+         */
+        abstract Object fromCursor(Cursor cursor, int index);
+    }
+
+    /**
+     * Codec of the enum types.
+     */
+    private static final class EnumCodec extends NullableCodec {
+        /** Enum type. */
+        @SuppressWarnings("rawtypes")
+        private final Class<? extends Enum> mEnumType;
+
+        /** Enum constants in the order of the ordinals. */
+        private final Object[] mConstants;
+
+        /** True if the values are stored as the ordinals. */
+        private final boolean mOrdinal;
+
+        /**
+         * Creates the codec.
+         * 
+         * @param enumType enum type
+         * @param ordinal true if the values are stored as the ordinals
+         */
+        @SuppressWarnings({
+                "rawtypes", "unchecked"
+        })
+        EnumCodec(final Class<?> enumType, final boolean ordinal) {
+            super(ordinal ? "INTEGER" : "TEXT");
+            mEnumType = (Class<? extends Enum>) enumType;
+            mConstants = enumType.getEnumConstants();
+            mOrdinal = ordinal;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Object fromCursor(final Cursor cursor, final int index) {
+            if (mOrdinal) {
+                return mConstants[cursor.getInt(index)];
+            }
+            return Enum.valueOf(mEnumType, cursor.getString(index));
+        }
+
+        @Override
+        Object toDatabase(final Object value) {
+            if (mOrdinal) {
+                return Long.valueOf(((Enum<?>) value).ordinal());
+            }
+            return ((Enum<?>) value).name();
+        }
+    }
+
+    /**
+     * Creates the registry.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private ColumnCodecs() {
+    }
+
+    /**
+     * Registers the codec of the type.<br>
+     * This must be called before the entities which have the fields of the
+     * type are used, because the codecs are resolved only once for each
+     * field.
+     * 
+     * @param type Java type of the fields
+     * @param codec codec of the type
+     */
+    public static void register(final Class<?> type, final ColumnCodec codec) {
+        CODECS.put(type, codec);
+    }
+
+    /**
+     * Returns the codec of the field.
+     * 
+     * @param field field of the entity
+     * @return codec of the field
+     */
+    static ColumnCodec forField(final Field field) {
+        final Class<?> type = field.getType();
+        final ColumnCodec codec = CODECS.get(type);
+        if (codec != null) {
+            return codec;
+        }
+        if (type.isEnum()) {
+            final Enumerated enumerated = field.getAnnotation(Enumerated.class);
+            return new EnumCodec(type, enumerated == null
+                    || enumerated.value() == EnumType.ORDINAL);
+        }
+        return UNSUPPORTED;
+    }
+
+    /**
+     * Returns the SQL type of the column which the codec of the field stores
+     * the field as.
+     * 
+     * @param field field of the entity
+     * @return SQL type, or {@code null} to declare the column without type
+     */
+    static String getSqlType(final Field field) {
+        return forField(field).getSqlType();
+    }
+
+    /**
+     * Converts the non-null field value to the database value by the
+     * built-in codec, without the entity.
+     * 
+     * @param codec built-in codec of the field
+     * @param value field value
+     * @return {@code Long}, {@code Double}, {@code String} or {@code byte[]}
+     */
+    static Object toDatabaseValue(final ColumnCodec codec, final Object value) {
+        return ((BuiltInCodec) codec).toDatabase(value);
+    }
+
+    /**
+     * Returns whether the codec is built in this library or not.
+     * 
+     * @param codec codec to check
+     * @return true if the codec is a built-in codec
+     */
+    static boolean isBuiltIn(final ColumnCodec codec) {
+        return codec instanceof BuiltInCodec;
+    }
+
+    /**
+     * Executes the query binding the arguments with their types.<br>
+     * {@link SQLiteDatabase#rawQuery(String, String[])} binds all the
+     * arguments as TEXT, which SQLite compares with the INTEGER and REAL
+     * columns differently. The arguments are bound again by the cursor
+     * factory before the query is stepped.
+     * 
+     * @param db database to query
+     * @param sql SELECT statement
+     * @param args arguments in the same form as
+     *            {@link ColumnCodec#toDatabaseValue(Field, Object)}
+     * @return cursor of the query
+     */
+    static Cursor rawQuery(final SQLiteDatabase db, final String sql, final Object[] args) {
+        // The driver binds these first, and rejects null on the old platforms
+        final String[] textArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            textArgs[i] = args[i] == null ? "" : args[i].toString();
+        }
+        return db.rawQueryWithFactory(new CursorFactory() {
+            @Override
+            public Cursor newCursor(final SQLiteDatabase database,
+                    final SQLiteCursorDriver driver, final String editTable,
+                    final SQLiteQuery query) {
+                for (int i = 0; i < args.length; i++) {
+                    bindValue(query, i + 1, args[i]);
+                }
+                return new SQLiteCursor(database, driver, editTable, query);
+            }
+        }, sql, textArgs, null);
+    }
+
+    /**
+     * Binds the database value to the statement with its type.
+     * 
+     * @param program compiled statement or query
+     * @param index index of the parameter, starting from 1
+     * @param value value to bind
+     */
+    static void bindValue(final SQLiteProgram program, final int index, final Object value) {
+        if (value == null) {
+            program.bindNull(index);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            program.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            program.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            program.bindLong(index, ((Boolean) value).booleanValue() ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            program.bindBlob(index, (byte[]) value);
+        } else {
+            program.bindString(index, value.toString());
+        }
+    }
+}
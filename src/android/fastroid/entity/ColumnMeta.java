@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import java.lang.reflect.Field;
+
+/**
+ * Immutable description of a {@code Column} field of an entity class.
+ * <p>
+ * Instances are created once per class by {@link EntityMeta}.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class ColumnMeta {
+    /** Field of the entity mapped to this column. */
+    private final Field mField;
+
+    /** Name of the column. */
+    private final String mColumnName;
+
+    /** Column name qualified by the table name. */
+    private final String mQualifiedName;
+
+    /** True if this column is a primary key. */
+    private final boolean mId;
+
+    /** True if this column is an auto-increment primary key. */
+    private final boolean mAutoIncrement;
+
+    /** Codec to convert the field value. */
+    private final ColumnCodec mCodec;
+
+    /**
+     * Creates a column descriptor.
+     * 
+     * @param field field of the entity
+     * @param tableName name of the table which has this column
+     * @param id true if the column is a primary key
+     * @param autoIncrement true if the column is an auto-increment primary key
+     */
+    ColumnMeta(final Field field, final String tableName, final boolean id,
+            final boolean autoIncrement) {
+        mField = field;
+        mColumnName = EntityMeta.toDbName(field.getName());
+        mQualifiedName = tableName + "." + mColumnName;
+        mId = id;
+        mAutoIncrement = autoIncrement;
+        mCodec = ColumnCodecs.forField(field);
+    }
+
+    /**
+     * Returns the field mapped to this column.
+     * 
+     * @return field of the entity
+     */
+    Field getField() {
+        return mField;
+    }
+
+    /**
+     * Returns the name of the field mapped to this column.
+     * 
+     * @return field name
+     */
+    String getFieldName() {
+        return mField.getName();
+    }
+
+    /**
+     * Returns the type of the field mapped to this column.
+     * 
+     * @return field type
+     */
+    Class<?> getType() {
+        return mField.getType();
+    }
+
+    /**
+     * Returns the codec to convert the field value.
+     * 
+     * @return codec of the field
+     */
+    ColumnCodec getCodec() {
+        return mCodec;
+    }
+
+    /**
+     * Returns the name of this column.
+     * 
+     * @return column name
+     */
+    String getColumnName() {
+        return mColumnName;
+    }
+
+    /**
+     * Returns the name of this column qualified by the table name.
+     * 
+     * @return qualified column name such as {@code TABLE.COLUMN}
+     */
+    String getQualifiedName() {
+        return mQualifiedName;
+    }
+
+    /**
+     * Returns whether this column is a primary key or not.
+     * 
+     * @return true if this column is a primary key
+     */
+    boolean isId() {
+        return mId;
+    }
+
+    /**
+     * Returns whether this column is an auto-increment primary key or not.
+     * 
+     * @return true if this column is an auto-increment primary key
+     */
+    boolean isAutoIncrement() {
+        return mAutoIncrement;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+/**
+ * Defines how an upsert resolves the conflict with the existing row of the
+ * same primary keys.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ * @see DatabaseManager#upsert(android.database.sqlite.SQLiteOpenHelper, Object,
+ *      ConflictStrategy)
+ */
+public enum ConflictStrategy {
+    /**
+     * Replaces the existing row by {@code INSERT OR REPLACE}.<br>
+     * SQLite deletes the existing row and inserts the new one, so the columns
+     * which the entity does not have are reset to their defaults.
+     */
+    REPLACE,
+    /** Keeps the existing row by {@code INSERT OR IGNORE}. */
+    IGNORE,
+    /**
+     * Updates the existing row only with the fields which are not
+     * {@code null}, or inserts the object if the row does not exist.
+     */
+    UPDATE_NON_NULL;
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the database connections used by {@link DatabaseManager}.
+ * <p>
+ * The database opened by a {@link SQLiteOpenHelper} is shared by all the
+ * operations, and is counted the references while the operations are
+ * running. The database is kept open after the operations by default, so
+ * that SQLite can reuse its page cache and statement cache. To reclaim the
+ * memory, set the idle timeout by {@link #setIdleTimeout(long)}; the database
+ * is closed when no operations use it for the time.
+ * <p>
+ * The database must not be closed directly while {@link DatabaseManager}
+ * uses it. Call {@link #close(SQLiteOpenHelper)} instead.
+ * <p>
+ * By default the reads and the writes share the database of the helper, and
+ * a query waits while another thread is writing. Calling
+ * {@link #enableWriteAheadLogging(SQLiteOpenHelper, int)} switches the
+ * database to the write-ahead logging mode and opens read-only connections
+ * for the queries. Each query then reads a consistent snapshot without
+ * waiting for the writer, while the writes keep using the single database of
+ * the helper.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class ConnectionManager {
+    /** Idle timeout value which keeps the database open. */
+    public static final long KEEP_OPEN = -1;
+
+    /**
+     * Connections by helper. The values must not refer the helper, so that
+     * the entry is removed when the helper is collected. Guarded by itself.
+     */
+    private static final Map<SQLiteOpenHelper, Connection> CONNECTIONS =
+            new WeakHashMap<SQLiteOpenHelper, Connection>();
+
+    /** Idle timeout in milliseconds. */
+    private static volatile long sIdleTimeout = KEEP_OPEN;
+
+    /** Executor to close idle connections. Created lazily. */
+    private static ScheduledExecutorService sCloser;
+
+    /**
+     * Reference count and state of the database of a helper.
+     */
+    private static final class Connection {
+        /** Number of the operations using the database. */
+        private int mRefCount;
+
+        /** Scheduled task to close the database, or {@code null}. */
+        private ScheduledFuture<?> mCloseTask;
+
+        /** Maximum number of the read-only connections, or 0 to disable. */
+        private int mMaxReaders;
+
+        /**
+         * Whether the opened database is confirmed to be in the write-ahead
+         * logging mode. This is reset when the database is closed.
+         */
+        private boolean mWalEnabled;
+
+        /** All the opened read-only connections. */
+        private final List<SQLiteDatabase> mReaders = new ArrayList<SQLiteDatabase>();
+
+        /** Read-only connections which no operations use. */
+        private final LinkedList<SQLiteDatabase> mIdleReaders =
+                new LinkedList<SQLiteDatabase>();
+    }
+
+    /**
+     * Creates the manager.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private ConnectionManager() {
+    }
+
+    /**
+     * Sets the idle timeout.<br>
+     * The database is closed when no operations have used it for the timeout.
+     * {@code 0} closes the database as soon as the operations finish, and
+     * {@link #KEEP_OPEN} keeps the database open for the process lifetime.
+     * The default is {@link #KEEP_OPEN}.
+     * 
+     * @param idleTimeoutMillis idle timeout in milliseconds
+     */
+    public static void setIdleTimeout(final long idleTimeoutMillis) {
+        sIdleTimeout = idleTimeoutMillis;
+    }
+
+    /**
+     * Switches the database of the helper to the write-ahead logging mode, and
+     * enables the pool of the read-only connections.<br>
+     * The queries use one of the read-only connections, and they don't wait
+     * for the writes in the other threads. The queries in a transaction of the
+     * current thread keep using the writable database to see the uncommitted
+     * changes, and the queries also use it when all the read-only connections
+     * are busy.
+     * <p>
+     * The mode requires SQLite 3.7.0 or later. If the SQLite of the device
+     * does not support it, nothing is changed and false is returned. When the
+     * database is reopened after it is closed, the mode is applied again, and
+     * the read-only connections are used only if it succeeds.
+     * 
+     * @param helper helper which opens the database
+     * @param readerCount maximum number of the read-only connections
+     * @return true if the write-ahead logging mode is enabled
+     */
+    public static boolean enableWriteAheadLogging(final SQLiteOpenHelper helper,
+            final int readerCount) {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("readerCount must be positive: " + readerCount);
+        }
+        final Connection connection = getConnection(helper);
+        synchronized (connection) {
+            cancelClose(connection);
+            if (!applyWriteAheadLogging(helper)) {
+                return false;
+            }
+            connection.mMaxReaders = readerCount;
+            connection.mWalEnabled = true;
+            return true;
+        }
+    }
+
+    /**
+     * Closes the database of the helper if no operations use it.
+     * 
+     * @param helper helper which opens the database
+     * @return true if the database is closed
+     */
+    public static boolean close(final SQLiteOpenHelper helper) {
+        EntityIterator.releaseAbandoned();
+        final Connection connection = getConnection(helper);
+        synchronized (connection) {
+            if (connection.mRefCount > 0) {
+                return false;
+            }
+            cancelClose(connection);
+            closeAll(helper, connection);
+            return true;
+        }
+    }
+
+    /**
+     * Opens the database if needed, and counts the reference.<br>
+     * {@link #release(SQLiteOpenHelper, SQLiteDatabase)} must be called after
+     * the operation.
+     * 
+     * @param helper helper which opens the database
+     * @param writable true if the operation writes the database
+     * @return opened database
+     */
+    static SQLiteDatabase acquire(final SQLiteOpenHelper helper, final boolean writable) {
+        EntityIterator.releaseAbandoned();
+        final Connection connection = getConnection(helper);
+        synchronized (connection) {
+            cancelClose(connection);
+            if (connection.mMaxReaders > 0 && !connection.mWalEnabled
+                    && connection.mRefCount == 0) {
+                // The database has been reopened after the close, so the mode
+                // is applied again before the readers are used.
+                connection.mWalEnabled = applyWriteAheadLogging(helper);
+                if (!connection.mWalEnabled) {
+                    connection.mMaxReaders = 0;
+                }
+            }
+            SQLiteDatabase db = null;
+            if (writable) {
+                db = helper.getWritableDatabase();
+            } else {
+                if (connection.mWalEnabled) {
+                    db = acquireReader(helper, connection);
+                }
+                if (db == null) {
+                    db = helper.getReadableDatabase();
+                }
+            }
+            connection.mRefCount++;
+            return db;
+        }
+    }
+
+    /**
+     * Releases the reference of the database, and closes it according to the
+     * idle timeout.
+     * 
+     * @param helper helper which opened the database
+     * @param db database returned by {@link #acquire(SQLiteOpenHelper, boolean)}
+     */
+    static void release(final SQLiteOpenHelper helper, final SQLiteDatabase db) {
+        EntityIterator.releaseAbandoned();
+        final Connection connection = getConnection(helper);
+        synchronized (connection) {
+            if (connection.mReaders.contains(db)) {
+                connection.mIdleReaders.addFirst(db);
+            }
+            connection.mRefCount--;
+            if (connection.mRefCount > 0) {
+                return;
+            }
+            final long idleTimeout = sIdleTimeout;
+            if (idleTimeout == 0) {
+                closeAll(helper, connection);
+            } else if (idleTimeout > 0) {
+                scheduleClose(helper, connection, idleTimeout);
+            }
+        }
+    }
+
+    /**
+     * Returns an idle read-only connection, or opens a new one.<br>
+     * This must be called with the lock of the connection.
+     * 
+     * @param helper helper which opens the database
+     * @param connection connection state of the helper
+     * @return read-only connection, or {@code null} if the writable database
+     *         should be used
+     */
+    private static SQLiteDatabase acquireReader(final SQLiteOpenHelper helper,
+            final Connection connection) {
+        final SQLiteDatabase writer = helper.getWritableDatabase();
+        if (writer.isDbLockedByCurrentThread()) {
+            // The current thread is in a transaction, and the read-only
+            // connections cannot see its uncommitted changes.
+            return null;
+        }
+        if (!connection.mIdleReaders.isEmpty()) {
+            return connection.mIdleReaders.removeFirst();
+        }
+        if (connection.mReaders.size() >= connection.mMaxReaders) {
+            return null;
+        }
+        final SQLiteDatabase reader = SQLiteDatabase.openDatabase(writer.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        connection.mReaders.add(reader);
+        return reader;
+    }
+
+    /**
+     * Switches the database of the helper to the write-ahead logging mode.<br>
+     * This must be called with the lock of the connection while no operations
+     * use the database.
+     * 
+     * @param helper helper which opens the database
+     * @return true if the journal mode is "wal"
+     */
+    private static boolean applyWriteAheadLogging(final SQLiteOpenHelper helper) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        // SQLiteDatabase#enableWriteAheadLogging() is not available on
+        // the old platforms, so the journal mode is set directly.
+        String mode = null;
+        final Cursor cursor = db.rawQuery("PRAGMA journal_mode=WAL", null);
+        try {
+            if (cursor.moveToFirst()) {
+                mode = cursor.getString(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return "wal".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Closes the read-only connections and the database of the helper.<br>
+     * This must be called with the lock of the connection.
+     * 
+     * @param helper helper which opens the database
+     * @param connection connection state of the helper
+     */
+    private static void closeAll(final SQLiteOpenHelper helper, final Connection connection) {
+        for (SQLiteDatabase reader : connection.mReaders) {
+            reader.close();
+        }
+        connection.mReaders.clear();
+        connection.mIdleReaders.clear();
+        connection.mWalEnabled = false;
+        helper.close();
+    }
+
+    /**
+     * Returns the connection state of the helper.
+     * 
+     * @param helper helper which opens the database
+     * @return connection state
+     */
+    private static Connection getConnection(final SQLiteOpenHelper helper) {
+        synchronized (CONNECTIONS) {
+            Connection connection = CONNECTIONS.get(helper);
+            if (connection == null) {
+                connection = new Connection();
+                CONNECTIONS.put(helper, connection);
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Schedules to close the idle database.<br>
+     * This must be called with the lock of the connection. The task refers
+     * the helper weakly, so that the pending close does not keep the helper
+     * and its context alive.
+     * 
+     * @param helper helper which opens the database
+     * @param connection connection state of the helper
+     * @param idleTimeout idle timeout in milliseconds
+     */
+    private static void scheduleClose(final SQLiteOpenHelper helper,
+            final Connection connection, final long idleTimeout) {
+        cancelClose(connection);
+        final WeakReference<SQLiteOpenHelper> helperRef =
+                new WeakReference<SQLiteOpenHelper>(helper);
+        connection.mCloseTask = getCloser().schedule(new Runnable() {
+            @Override
+            public void run() {
+                final SQLiteOpenHelper idleHelper = helperRef.get();
+                if (idleHelper == null) {
+                    return;
+                }
+                synchronized (connection) {
+                    if (connection.mRefCount == 0 && connection.mCloseTask != null) {
+                        connection.mCloseTask = null;
+                        closeAll(idleHelper, connection);
+                    }
+                }
+            }
+        }, idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the scheduled close.<br>
+     * This must be called with the lock of the connection.
+     * 
+     * @param connection connection state
+     */
+    private static void cancelClose(final Connection connection) {
+        if (connection.mCloseTask != null) {
+            connection.mCloseTask.cancel(false);
+            connection.mCloseTask = null;
+        }
+    }
+
+    /**
+     * Returns the executor to close idle connections.
+     * 
+     * @return executor
+     */
+    private static synchronized ScheduledExecutorService getCloser() {
+        if (sCloser == null) {
+            sCloser = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "fastroid-connection-closer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sCloser;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import android.os.Handler;
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded worker pool which executes the asynchronous operations of
+ * {@link DatabaseManager}.
+ * <p>
+ * The workers run in the background priority. If the queue is full, the
+ * operation is rejected by {@code RejectedExecutionException} instead of
+ * growing the queue without limit. The operations submitted with the same
+ * tag supersede each other; the pending or running operation of the tag is
+ * cancelled when a new one is submitted, so the stale queries of a screen
+ * are dropped instead of being queued.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class DatabaseExecutor {
+    /** Default number of the worker threads. */
+    private static final int DEFAULT_POOL_SIZE = 2;
+
+    /** Default maximum number of the queued operations. */
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /** Executor, or {@code null} if it is not created yet. Guarded by the class. */
+    private static ThreadPoolExecutor sExecutor;
+
+    /** Number of the worker threads. Guarded by the class. */
+    private static int sPoolSize = DEFAULT_POOL_SIZE;
+
+    /** Maximum number of the queued operations. Guarded by the class. */
+    private static int sQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /** Latest operations by the tag. Guarded by itself. */
+    private static final Map<Object, Task<?>> TAGGED = new HashMap<Object, Task<?>>();
+
+    /**
+     * Operation which delivers the result to the callback.
+     * 
+     * @param <T> type of the result
+     */
+    private static final class Task<T> extends FutureTask<T> {
+        /** Tag of the operation, or {@code null}. */
+        private final Object mTag;
+
+        /** Handler to deliver the result, or {@code null}. */
+        private final Handler mHandler;
+
+        /** Callback to receive the result, or {@code null}. */
+        private final QueryCallback<T> mCallback;
+
+        /** Flag to stop the mapping when cancelled, or {@code null}. */
+        private final AtomicBoolean mCancelled;
+
+        /**
+         * Creates a task.
+         * 
+         * @param work operation to execute
+         * @param tag tag of the operation, or {@code null}
+         * @param handler handler to deliver the result, or {@code null}
+         * @param callback callback to receive the result, or {@code null}
+         * @param cancelled flag to set when cancelled, or {@code null}
+         */
+        Task(final Callable<T> work, final Object tag, final Handler handler,
+                final QueryCallback<T> callback, final AtomicBoolean cancelled) {
+            super(work);
+            mTag = tag;
+            mHandler = handler;
+            mCallback = callback;
+            mCancelled = cancelled;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            if (mCancelled != null) {
+                mCancelled.set(true);
+            }
+            // The worker is not interrupted while it may be inside SQLite;
+            // the flag stops the work at the next row instead.
+            final boolean cancelled = super.cancel(false);
+            // Drops the task from the queue if it is not started yet
+            final ThreadPoolExecutor executor = getExecutorIfCreated();
+            if (executor != null) {
+                executor.remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            if (mTag != null) {
+                synchronized (TAGGED) {
+                    if (TAGGED.get(mTag) == this) {
+                        TAGGED.remove(mTag);
+                    }
+                }
+            }
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+            Runnable delivery;
+            try {
+                final T result = get();
+                delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onResult(result);
+                    }
+                };
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                final Exception cause;
+                if (e.getCause() instanceof Exception) {
+                    cause = (Exception) e.getCause();
+                } else {
+                    cause = e;
+                }
+                delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onError(cause);
+                    }
+                };
+            }
+            if (mHandler == null) {
+                delivery.run();
+            } else {
+                mHandler.post(delivery);
+            }
+        }
+    }
+
+    /**
+     * Creates the executor.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * Sets the size of the pool and the queue.<br>
+     * The operations already submitted are executed by the previous pool.
+     * 
+     * @param poolSize number of the worker threads
+     * @param queueCapacity maximum number of the queued operations
+     */
+    public static synchronized void configure(final int poolSize, final int queueCapacity) {
+        if (poolSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("poolSize and queueCapacity must be positive");
+        }
+        sPoolSize = poolSize;
+        sQueueCapacity = queueCapacity;
+        if (sExecutor != null) {
+            sExecutor.shutdown();
+            sExecutor = null;
+        }
+    }
+
+    /**
+     * Cancels the pending or running operation of the tag.
+     * 
+     * @param tag tag of the operation
+     */
+    public static void cancel(final Object tag) {
+        final Task<?> task;
+        synchronized (TAGGED) {
+            task = TAGGED.remove(tag);
+        }
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Submits the operation.
+     * 
+     * @param <T> type of the result
+     * @param work operation to execute
+     * @param tag tag to supersede the previous operation, or {@code null}
+     * @param handler handler to deliver the result, or {@code null} to
+     *            deliver in the worker thread
+     * @param callback callback to receive the result, or {@code null}
+     * @param cancelled flag of the execution to set when cancelled, which is
+     *            checked by the work, or {@code null}
+     * @return future of the result
+     */
+    static <T> Future<T> submit(final Callable<T> work, final Object tag, final Handler handler,
+            final QueryCallback<T> callback, final AtomicBoolean cancelled) {
+        final Task<T> task = new Task<T>(work, tag, handler, callback, cancelled);
+        if (tag != null) {
+            final Task<?> superseded;
+            synchronized (TAGGED) {
+                superseded = TAGGED.put(tag, task);
+            }
+            if (superseded != null) {
+                superseded.cancel(false);
+            }
+        }
+        try {
+            getExecutor().execute(task);
+        } catch (RuntimeException e) {
+            if (tag != null) {
+                synchronized (TAGGED) {
+                    if (TAGGED.get(tag) == task) {
+                        TAGGED.remove(tag);
+                    }
+                }
+            }
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Returns the executor, creating it at the first call.
+     * 
+     * @return executor
+     */
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            sExecutor = new ThreadPoolExecutor(sPoolSize, sPoolSize, 0, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(sQueueCapacity),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Process.setThreadPriority(
+                                            Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "fastroid-db-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Returns the executor if it is created.
+     * 
+     * @return executor, or {@code null}
+     */
+    private static synchronized ThreadPoolExecutor getExecutorIfCreated() {
+        return sExecutor;
+    }
+}
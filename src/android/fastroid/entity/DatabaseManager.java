@@ -26,33 +26,42 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.fastroid.entity.Join.JoinType;
-import android.fastroid.entity.annotation.Column;
-import android.fastroid.entity.annotation.Id;
-import android.fastroid.entity.annotation.JoinColumn;
-import android.fastroid.entity.annotation.ManyToOne;
-import android.fastroid.entity.annotation.OneToMany;
 import android.fastroid.util.StringUtil;
+import android.os.Handler;
+import android.util.Log;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Simplifies the database operations.<br>
  * TODO copy method from existing instance.<br>
- * TODO upsert method<br>
  * 
  * @author Soichiro Kashima
  * @since 2011/05/05
  */
 public final class DatabaseManager {
+    /** Tag for the log. */
+    private static final String TAG = "fastroid";
+
+    /** Registered listeners; replaced on change, so it is read without lock. */
+    private static volatile QueryListener[] sQueryListeners = new QueryListener[0];
+
     /**
      * Represents the type of the database operation.
      */
@@ -76,20 +85,29 @@ public final class DatabaseManager {
     /** Target object of the operations. */
     private Object mTarget;
 
+    /** Mapping information of the target class. */
+    private EntityMeta mMeta;
+
     /** Map of the values to update. */
     private ContentValues mContentValues;
 
     /** Taples of the names of the column and values for WHERE clause. */
-    private Map<String, String> mWhereClauseMap;
+    private Map<String, Object> mWhereClauseMap;
 
     /** Tables to join. */
     private List<Join> mJoinList;
 
+    /** Field names to select, or {@code null} to select all the columns. */
+    private String[] mSelectedFieldNames;
+
     /** WHERE clause. */
     private String mWhereClause;
 
     /** Arguments of the WHERE clause. */
-    private String[] mWhereArgs;
+    private Object[] mWhereArgs;
+
+    /** Typed arguments of the WHERE clause to bind to the statement. */
+    private Object[] mWhereBindArgs;
 
     /** GROUP BY clause. */
     private String mGroupByClause;
@@ -100,6 +118,48 @@ public final class DatabaseManager {
     /** ORDER BY clause. */
     private String mOrderByClause;
 
+    /** Maximum number of the rows to select, or {@code -1} for no limit. */
+    private int mLimit;
+
+    /** Number of the rows to skip. */
+    private int mOffset;
+
+    /** Last entity of the previous page for the keyset pagination. */
+    private Object mAfter;
+
+    /** WHERE condition of the keyset pagination. */
+    private String mKeysetClause;
+
+    /** Arguments of the WHERE condition of the keyset pagination. */
+    private Object[] mKeysetArgs;
+
+    /** ORDER BY clause including the primary keys for the keyset pagination. */
+    private String mKeysetOrderByClause;
+
+    /** Whether the joined rows of the same entity are collapsed into one. */
+    private boolean mCollapseRows;
+
+    /** Whether the rows of the same primary keys resolve to one instance. */
+    private boolean mUseIdentityMap;
+
+    /** Identity map of the executing query, or {@code null} if not used. */
+    private IdentityMap mIdentityMap;
+
+    /** Values of the primary keys set by {@link #whereId()}. */
+    private List<String> mIdValues;
+
+    /** Whether the result is cached by {@link QueryCache}. */
+    private boolean mCacheResult;
+
+    /** Aggregate expression to select instead of the columns. */
+    private String mAggregate;
+
+    /** UPDATE or DELETE statement executed by {@link #execute()}. */
+    private String mExecutedSql;
+
+    /** Snapshot to set to the {@link Trackable} target after the UPDATE. */
+    private Snapshot mSnapshot;
+
     /**
      * Creates a {@code DatabaseManager}.<br>
      * To prepare database operations certainly, this is only accessible inside
@@ -113,14 +173,18 @@ public final class DatabaseManager {
      */
     private DatabaseManager(final SQLiteOpenHelper helper, final Object target) {
         mTarget = target;
+        mMeta = EntityMeta.of(target.getClass());
         mHelper = helper;
         mContentValues = new ContentValues();
         mWhereClause = null;
         mWhereArgs = null;
-        mWhereClauseMap = new LinkedHashMap<String, String>();
+        mWhereClauseMap = new LinkedHashMap<String, Object>();
         mGroupByClause = null;
         mHavingClause = null;
         mOrderByClause = null;
+        mLimit = -1;
+        mOffset = 0;
+        mAfter = null;
         mJoinList = new ArrayList<Join>();
     }
 
@@ -137,6 +201,94 @@ public final class DatabaseManager {
         return manager;
     }
 
+    /**
+     * Selects the entity by the primary keys.
+     * <p>
+     * This is the fast path of {@link #whereId()}; the SELECT statement is
+     * built once for each class, and no {@code DatabaseManager} or list is
+     * created. If the cache of the class is enabled by {@link EntityCache},
+     * the cached entity is returned without accessing the database.
+     * 
+     * @param <T> type of the entity
+     * @param helper db helper to access the target table
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys in the types of the primary key
+     *            fields, such as {@code Long} or {@code Date}, in their order
+     * @return entity, or {@code null} if it is not found
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T findById(final SQLiteOpenHelper helper, final Class<T> entityClass,
+            final Object... ids) {
+        final EntityMeta meta = EntityMeta.of(entityClass);
+        final String sql = meta.getFindByIdSql();
+        if (sql == null) {
+            throw new IllegalStateException("No primary key in " + entityClass.getName());
+        }
+        if (ids.length != meta.getIdColumns().length) {
+            throw new IllegalArgumentException("Expected " + meta.getIdColumns().length
+                    + " primary keys, but " + ids.length);
+        }
+        final Object[] args = new Object[ids.length];
+        final List<String> idValues = new ArrayList<String>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == null) {
+                throw new IllegalArgumentException("Primary key is null: "
+                        + meta.getIdColumns()[i].getFieldName());
+            }
+            args[i] = toDatabaseValue(meta, meta.getIdColumns()[i], ids[i]);
+            idValues.add(args[i].toString());
+        }
+        final long cacheVersion = EntityCache.getVersion(entityClass);
+        if (cacheVersion != EntityCache.NOT_CACHED) {
+            final T cached = (T) EntityCache.get(entityClass, idValues);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final boolean timed = sQueryListeners.length > 0;
+        final long startTime = timed ? System.nanoTime() : 0;
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        T entity = null;
+        QueryEvent event = null;
+        try {
+            db = ConnectionManager.acquire(helper, false);
+            cursor = ColumnCodecs.rawQuery(db, sql, args);
+            final boolean found = cursor.moveToFirst();
+            final long executedTime = timed ? System.nanoTime() : 0;
+            if (found) {
+                entity = (T) newEntity(meta);
+                setFieldValuesByCursor(meta, entity, cursor, meta.getAllColumnIndexes());
+                if (cacheVersion != EntityCache.NOT_CACHED && !db.inTransaction()) {
+                    EntityCache.put(entityClass, idValues, entity, cacheVersion);
+                }
+            }
+            if (timed) {
+                event = new QueryEvent(QueryEvent.Type.SELECT, entityClass, sql);
+                event.setTimes(startTime, startTime, executedTime, System.nanoTime());
+                event.setRowCount(found ? 1 : 0);
+                if (found) {
+                    event.setBlobBytes(countBlobBytes(meta, entity));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (db != null) {
+                ConnectionManager.release(helper, db);
+            }
+        }
+        if (event != null) {
+            fireQueryEvent(event);
+        }
+        return entity;
+    }
+
     /**
      * Prepares to insert to tables specifying an entity object.
      * <p>
@@ -149,29 +301,363 @@ public final class DatabaseManager {
     public static DatabaseManager insert(final SQLiteOpenHelper helper, final Object target) {
         DatabaseManager manager = new DatabaseManager(helper, target);
         manager.mProcessType = ProcessType.INSERT;
-        // Creates db columns by fields
-        Field[] fields = target.getClass().getFields();
-        for (Field field : fields) {
-            // Skip non-column fields
-            if (field.getAnnotation(Column.class) == null) {
-                continue;
+        // Creates db columns by fields except auto-increment columns
+        for (ColumnMeta column : manager.mMeta.getInsertColumns()) {
+            putValue(manager.mContentValues, column.getColumnName(),
+                    getFieldValue(column, target));
+        }
+        return manager;
+    }
+
+    /**
+     * Inserts all the objects in a transaction.
+     * <p>
+     * The INSERT statement is compiled once for each class and reused for all
+     * the rows, so this is much faster than calling
+     * {@link #insert(SQLiteOpenHelper, Object)} for each object. If any of
+     * the inserts fails, none of the objects are inserted.
+     * 
+     * @param helper db helper to access the target table
+     * @param targets objects which have values to insert
+     * @return row IDs of the inserted rows in the order of the objects
+     */
+    public static long[] insertAll(final SQLiteOpenHelper helper, final Collection<?> targets) {
+        final long[] rowIds = new long[targets.size()];
+        if (targets.isEmpty()) {
+            return rowIds;
+        }
+        final Map<Class<?>, SQLiteStatement> statements = new HashMap<Class<?>, SQLiteStatement>();
+        SQLiteDatabase db = null;
+        try {
+            db = ConnectionManager.acquire(helper, true);
+            CacheInvalidator.beginTransaction();
+            try {
+                db.beginTransaction();
+                try {
+                    int i = 0;
+                    for (Object target : targets) {
+                        final EntityMeta meta = EntityMeta.of(target.getClass());
+                        SQLiteStatement statement = statements.get(target.getClass());
+                        if (statement == null) {
+                            statement = db.compileStatement(meta.getInsertSql());
+                            statements.put(target.getClass(), statement);
+                        }
+                        bindColumns(statement, meta.getInsertColumns(), target);
+                        rowIds[i++] = statement.executeInsert();
+                        if (EntityCache.isEnabled(target.getClass())) {
+                            CacheInvalidator.invalidateEntity(target.getClass(),
+                                    getIdValues(meta, target));
+                        }
+                    }
+                    for (Class<?> targetClass : statements.keySet()) {
+                        CacheInvalidator.invalidateTable(
+                                EntityMeta.of(targetClass).getTableName());
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } finally {
+                // Invalidates again after the commit
+                CacheInvalidator.endTransaction();
+            }
+        } finally {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
             }
-            // Skip auto-increment columns
-            Id id = field.getAnnotation(Id.class);
-            if (id != null && id.autoIncrement()) {
-                continue;
+            if (db != null) {
+                ConnectionManager.release(helper, db);
             }
-            final String columnName = manager.toDbName(field.getName());
-            final String valueString = manager.getFieldValueAsString(field, target);
-            manager.mContentValues.put(columnName, valueString);
         }
-        return manager;
+        return rowIds;
+    }
+
+    /**
+     * Inserts the object, or replaces the existing row of the same primary
+     * keys.
+     * 
+     * @param helper db helper to access the target table
+     * @param target object which has values to write
+     * @return true if the row is written
+     * @see #upsert(SQLiteOpenHelper, Object, ConflictStrategy)
+     */
+    public static boolean upsert(final SQLiteOpenHelper helper, final Object target) {
+        return upsert(helper, target, ConflictStrategy.REPLACE);
+    }
+
+    /**
+     * Inserts the object, or resolves the conflict with the existing row of
+     * the same primary keys by the strategy.
+     * <p>
+     * The primary keys are the conflict target, and SQLite detects the
+     * conflict without selecting the row beforehand. If the auto-increment
+     * key of the object is {@code null} or {@code 0}, the object is inserted
+     * as a new row.
+     * 
+     * @param helper db helper to access the target table
+     * @param target object which has values to write
+     * @param strategy how to resolve the conflict
+     * @return true if the row is inserted or updated, false if the existing
+     *         row is kept by {@link ConflictStrategy#IGNORE}
+     */
+    public static boolean upsert(final SQLiteOpenHelper helper, final Object target,
+            final ConflictStrategy strategy) {
+        return upsertAll(helper, Collections.singletonList(target), strategy) > 0;
+    }
+
+    /**
+     * Upserts all the objects in a transaction, replacing the existing rows of
+     * the same primary keys.
+     * 
+     * @param helper db helper to access the target table
+     * @param targets objects which have values to write
+     * @return number of the written rows
+     * @see #upsertAll(SQLiteOpenHelper, Collection, ConflictStrategy)
+     */
+    public static int upsertAll(final SQLiteOpenHelper helper, final Collection<?> targets) {
+        return upsertAll(helper, targets, ConflictStrategy.REPLACE);
+    }
+
+    /**
+     * Upserts all the objects in a transaction.
+     * <p>
+     * The statements are compiled once for each class and reused for all the
+     * rows like {@link #insertAll(SQLiteOpenHelper, Collection)}. If any of
+     * the objects fails, none of them are written.
+     * 
+     * @param helper db helper to access the target table
+     * @param targets objects which have values to write
+     * @param strategy how to resolve the conflict
+     * @return number of the inserted or updated rows
+     * @see #upsert(SQLiteOpenHelper, Object, ConflictStrategy)
+     */
+    public static int upsertAll(final SQLiteOpenHelper helper, final Collection<?> targets,
+            final ConflictStrategy strategy) {
+        if (targets.isEmpty()) {
+            return 0;
+        }
+        final Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+        final Set<String> tableNames = new HashSet<String>();
+        int count = 0;
+        SQLiteDatabase db = null;
+        try {
+            db = ConnectionManager.acquire(helper, true);
+            CacheInvalidator.beginTransaction();
+            try {
+                db.beginTransaction();
+                try {
+                    for (Object target : targets) {
+                        final EntityMeta meta = EntityMeta.of(target.getClass());
+                        if (meta.getIdColumns().length == 0) {
+                            throw new IllegalArgumentException("No primary key in "
+                                    + meta.getEntityClass().getName());
+                        }
+                        if (upsertRow(db, statements, meta, target, strategy)) {
+                            count++;
+                        }
+                        if (EntityCache.isEnabled(target.getClass())) {
+                            CacheInvalidator.invalidateEntity(target.getClass(),
+                                    getIdValues(meta, target));
+                        }
+                        tableNames.add(meta.getTableName());
+                    }
+                    for (String tableName : tableNames) {
+                        CacheInvalidator.invalidateTable(tableName);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } finally {
+                // Invalidates again after the commit
+                CacheInvalidator.endTransaction();
+            }
+        } finally {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+            if (db != null) {
+                ConnectionManager.release(helper, db);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Upserts the object with the compiled statements.
+     * 
+     * @param db writable database
+     * @param statements compiled statements by the SQL, which are reused
+     * @param meta mapping information of the object
+     * @param target object which has values to write
+     * @param strategy how to resolve the conflict
+     * @return true if the row is inserted or updated
+     */
+    private static boolean upsertRow(final SQLiteDatabase db,
+            final Map<String, SQLiteStatement> statements, final EntityMeta meta,
+            final Object target, final ConflictStrategy strategy) {
+        for (ColumnMeta column : meta.getIdColumns()) {
+            if (column.isAutoIncrement() && isNewId(getFieldValue(column, target))) {
+                final SQLiteStatement insert = getStatement(db, statements, meta.getInsertSql());
+                bindColumns(insert, meta.getInsertColumns(), target);
+                insert.executeInsert();
+                return true;
+            }
+        }
+        if (strategy == ConflictStrategy.UPDATE_NON_NULL) {
+            final List<ColumnMeta> updateColumns = new ArrayList<ColumnMeta>();
+            final StringBuilder sql = new StringBuilder();
+            for (ColumnMeta column : meta.getColumns()) {
+                if (!column.isId() && getFieldValue(column, target) != null) {
+                    sql.append(updateColumns.isEmpty() ? "UPDATE " + meta.getTableName()
+                            + " SET " : ", ");
+                    sql.append(column.getColumnName()).append(" = ?");
+                    updateColumns.add(column);
+                }
+            }
+            if (updateColumns.isEmpty()) {
+                // Nothing to update, so the existing row is just kept
+                return executeInsert(db, statements,
+                        meta.getUpsertSql(ConflictStrategy.IGNORE), meta, target);
+            }
+            final ColumnMeta[] idColumns = meta.getIdColumns();
+            for (int i = 0; i < idColumns.length; i++) {
+                sql.append(i == 0 ? " WHERE " : " AND ");
+                sql.append(idColumns[i].getColumnName()).append(" = ?");
+                updateColumns.add(idColumns[i]);
+            }
+            final SQLiteStatement update = getStatement(db, statements, sql.toString());
+            bindColumns(update, updateColumns.toArray(new ColumnMeta[updateColumns.size()]),
+                    target);
+            update.execute();
+            if (queryChanges(db, statements) > 0) {
+                return true;
+            }
+        }
+        return executeInsert(db, statements, meta.getUpsertSql(strategy), meta, target);
+    }
+
+    /**
+     * Executes the INSERT statement parameterized by all the columns.
+     * 
+     * @param db writable database
+     * @param statements compiled statements by the SQL, which are reused
+     * @param sql INSERT statement
+     * @param meta mapping information of the object
+     * @param target object which has values to insert
+     * @return true if the row is inserted
+     */
+    private static boolean executeInsert(final SQLiteDatabase db,
+            final Map<String, SQLiteStatement> statements, final String sql,
+            final EntityMeta meta, final Object target) {
+        final SQLiteStatement insert = getStatement(db, statements, sql);
+        bindColumns(insert, meta.getColumns(), target);
+        insert.executeInsert();
+        // The row ID does not tell whether the row is ignored on API 7
+        return queryChanges(db, statements) > 0;
+    }
+
+    /**
+     * Returns the number of the rows changed by the last statement.
+     * 
+     * @param db writable database
+     * @param statements compiled statements by the SQL, which are reused
+     * @return number of the changed rows
+     */
+    private static long queryChanges(final SQLiteDatabase db,
+            final Map<String, SQLiteStatement> statements) {
+        return getStatement(db, statements, "SELECT changes()").simpleQueryForLong();
+    }
+
+    /**
+     * Returns the compiled statement of the SQL, compiling it at the first
+     * call.
+     * 
+     * @param db database to compile the statement
+     * @param statements compiled statements by the SQL
+     * @param sql SQL to compile
+     * @return compiled statement
+     */
+    private static SQLiteStatement getStatement(final SQLiteDatabase db,
+            final Map<String, SQLiteStatement> statements, final String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Returns whether the value of the auto-increment key means the row is
+     * not inserted yet.
+     * 
+     * @param value value of the auto-increment key
+     * @return true if the value is {@code null} or {@code 0}
+     */
+    private static boolean isNewId(final Object value) {
+        return value == null || (value instanceof Number && ((Number) value).longValue() == 0);
+    }
+
+    /**
+     * Executes the work in a transaction.
+     * <p>
+     * All the operations of {@code DatabaseManager} with the same helper in
+     * the work share one connection, and are committed at once when the work
+     * finishes. If the work throws an exception, all the operations are
+     * rolled back and the exception is thrown to the caller. A call inside
+     * the work joins the outer transaction; if it fails, the outer
+     * transaction is also rolled back.
+     * <p>
+     * The queries with {@link #useIdentityMap()} in the work share one
+     * identity map, so an entity is the same instance in all of them.
+     * 
+     * @param <T> type of the result of the work
+     * @param helper db helper to access the tables
+     * @param work database operations to execute
+     * @return result of the work
+     */
+    public static <T> T inTransaction(final SQLiteOpenHelper helper,
+            final TransactionWork<T> work) {
+        final SQLiteDatabase db = ConnectionManager.acquire(helper, true);
+        try {
+            IdentityMap.beginTransaction(helper);
+            try {
+                CacheInvalidator.beginTransaction();
+                try {
+                    db.beginTransaction();
+                    try {
+                        final T result = work.run();
+                        db.setTransactionSuccessful();
+                        return result;
+                    } finally {
+                        db.endTransaction();
+                    }
+                } finally {
+                    // Invalidates again after the commit
+                    CacheInvalidator.endTransaction();
+                }
+            } finally {
+                IdentityMap.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            ConnectionManager.release(helper, db);
+        }
     }
 
     /**
      * Prepares to update tables.<br>
      * <p>
      * Call {@link #execute()} to execute update after calling this method.
+     * <p>
+     * If the target is {@link Trackable} and has the snapshot, only the
+     * columns modified since the snapshot are updated, and {@link #execute()}
+     * returns {@code 0} without executing the statement if nothing is
+     * modified.
      * 
      * @param helper db helper to access the target table
      * @param target object which has values to update
@@ -180,21 +666,26 @@ public final class DatabaseManager {
     public static DatabaseManager update(final SQLiteOpenHelper helper, final Object target) {
         DatabaseManager manager = new DatabaseManager(helper, target);
         manager.mProcessType = ProcessType.UPDATE;
+        Snapshot snapshot = null;
+        if (target instanceof Trackable) {
+            snapshot = ((Trackable) target).getSnapshot();
+            manager.mSnapshot = Snapshot.take(manager.mMeta, target,
+                    manager.mMeta.getAllColumnIndexes());
+        }
         // Creates db columns by fields
-        Field[] fields = target.getClass().getFields();
-        for (Field field : fields) {
-            // Skip non-column fields
-            if (field.getAnnotation(Column.class) == null) {
-                continue;
-            }
-            final String columnName = manager.toDbName(field.getName());
-            final String valueString = manager.getFieldValueAsString(field, target);
+        final ColumnMeta[] columns = manager.mMeta.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            final ColumnMeta column = columns[i];
+            final String columnName = column.getColumnName();
+            final Object value = getFieldValue(column, target);
             // Sets the primary keys as condition to update, and other fields as
             // update values.
-            if (field.getAnnotation(Id.class) == null) {
-                manager.mContentValues.put(columnName, valueString);
+            if (!column.isId()) {
+                if (snapshot == null || snapshot.isModified(manager.mMeta, i, value)) {
+                    putValue(manager.mContentValues, columnName, value);
+                }
             } else {
-                manager.mWhereClauseMap.put(columnName, valueString);
+                manager.mWhereClauseMap.put(columnName, value);
             }
         }
         return manager;
@@ -211,20 +702,9 @@ public final class DatabaseManager {
     public static DatabaseManager delete(final SQLiteOpenHelper helper, final Object target) {
         DatabaseManager manager = new DatabaseManager(helper, target);
         manager.mProcessType = ProcessType.DELETE;
-        // Creates db columns by fields
-        Field[] fields = target.getClass().getFields();
-        for (Field field : fields) {
-            // Skip non-column fields
-            if (field.getAnnotation(Column.class) == null) {
-                continue;
-            }
-            // Sets the where conditions by primary keys
-            if (field.getAnnotation(Id.class) == null) {
-                continue;
-            }
-            final String columnName = manager.toDbName(field.getName());
-            final String valueString = manager.getFieldValueAsString(field, target);
-            manager.mWhereClauseMap.put(columnName, valueString);
+        // Sets the where conditions by primary keys
+        for (ColumnMeta column : manager.mMeta.getIdColumns()) {
+            manager.mWhereClauseMap.put(column.getColumnName(), getFieldValue(column, target));
         }
         return manager;
     }
@@ -242,41 +722,20 @@ public final class DatabaseManager {
      */
     public DatabaseManager leftOuterJoin(final String relationFieldName,
             final String additionalCondClause, final String... additionalCondArgs) {
+        final RelationMeta relation = mMeta.getRelation(relationFieldName);
+        if (relation == null) {
+            throw new IllegalArgumentException("Not a relation field: " + relationFieldName);
+        }
         Join join = new Join();
         join.setType(JoinType.LEFT_OUTER_JOIN);
         join.setFieldName(relationFieldName);
-        try {
-            // Determines the class to join
-            Field relationField = mTarget.getClass().getField(relationFieldName);
-            OneToMany oneToMany = relationField.getAnnotation(OneToMany.class);
-            Class<?> joinClass;
-            if (oneToMany == null) {
-                // Must be a normal class
-                joinClass = relationField.getType();
-            } else {
-                // Must be a parameterized List
-                ParameterizedType parameterizedType = (ParameterizedType) relationField
-                        .getGenericType();
-                joinClass = (Class<?>) parameterizedType.getActualTypeArguments()[0];
-            }
-            join.setTableClass(joinClass);
-            join.setTableName(toDbName(joinClass.getSimpleName()));
-
-            ManyToOne manyToOne = relationField.getAnnotation(ManyToOne.class);
-            JoinColumn joinColumn;
-            if (manyToOne == null) {
-                String childFieldName = oneToMany.mappedBy();
-                joinColumn = joinClass.getField(childFieldName)
-                        .getAnnotation(JoinColumn.class);
-            } else {
-                joinColumn = relationField.getAnnotation(JoinColumn.class);
-            }
-
-            join.setColumnName(toDbName(joinColumn.name()));
-            join.setAdditionalCondClause(additionalCondClause);
-            join.setAdditionalCondArgs(additionalCondArgs);
-        } catch (Exception e) {
-            e.printStackTrace();
+        join.setTableClass(relation.getTableClass());
+        join.setTableName(relation.getTableName());
+        join.setColumnName(relation.getColumnName());
+        join.setAdditionalCondClause(additionalCondClause);
+        join.setAdditionalCondArgs(additionalCondArgs);
+        if (mCollapseRows) {
+            checkIdColumns(EntityMeta.of(relation.getTableClass()));
         }
         mJoinList.add(join);
         return this;
@@ -289,138 +748,102 @@ public final class DatabaseManager {
      * @return list of the entities
      */
     public <T> List<T> executeQuery() {
-        @SuppressWarnings("unchecked")
+        return executeQuery(null);
+    }
+
+    /**
+     * Executes search which can be cancelled.
+     * 
+     * @param <T> type of the entity to be searched
+     * @param cancelled cancellation flag of the execution, or {@code null} if
+     *            it is not cancelled
+     * @return list of the entities
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> executeQuery(final AtomicBoolean cancelled) {
         Class<T> targetClass = (Class<T>) mTarget.getClass();
         ArrayList<T> result = new ArrayList<T>();
         // Cannot execute other than SELECT operation
         if (mProcessType != ProcessType.SELECT) {
             return result;
         }
+        if (isCacheableIdQuery()) {
+            final T cached = (T) EntityCache.get(targetClass, mIdValues);
+            if (cached != null) {
+                result.add(cached);
+                return result;
+            }
+        }
+        final long cacheVersion = EntityCache.getVersion(targetClass);
+        final boolean timed = sQueryListeners.length > 0;
+        final long startTime = timed ? System.nanoTime() : 0;
         SQLiteDatabase db = null;
         Cursor cursor = null;
+        QueryEvent event = null;
         try {
-            // Gets fields of the target class.
-            final String tableName = toDbName(targetClass.getSimpleName());
             constructWhereClause();
-
-            final Field[] fields = getFields(targetClass);
-            final List<String> fieldNames = getFieldNames(fields);
-            db = mHelper.getReadableDatabase();
-            StringBuilder columns = new StringBuilder();
-            for (String fieldName : fieldNames) {
-                if (columns.length() > 0) {
-                    columns.append(", ");
-                }
-                columns.append(tableName);
-                columns.append(".");
-                columns.append(fieldName);
-            }
-            List<String> sqlArgsList = new ArrayList<String>();
-            // Creates JOIN phrase
-            StringBuilder sql = new StringBuilder();
-            for (Join join : mJoinList) {
-                if (join.getType().equals(JoinType.INNER_JOIN)) {
-                    sql.append(" INNER JOIN ");
-                    sql.append(join.getTableName());
-                    sql.append(" ON ");
-                    sql.append(tableName);
-                    sql.append(".");
-                    sql.append(join.getColumnName());
-                    sql.append(" = ");
-                    sql.append(join.getTableName());
-                    sql.append(".");
-                    sql.append(join.getColumnName());
-                    // sql += " INNER JOIN " + join.getTableName()
-                    // + " ON " + tableName + "." + join.getColumnName()
-                    // + " = " + join.getTableName() + "." +
-                    // join.getColumnName();
-                } else if (join.getType().equals(JoinType.LEFT_OUTER_JOIN)) {
-                    sql.append(" LEFT OUTER JOIN ");
-                    sql.append(join.getTableName());
-                    sql.append(" ON ");
-                    sql.append(tableName);
-                    sql.append(".");
-                    sql.append(join.getColumnName());
-                    sql.append(" = ");
-                    sql.append(join.getTableName());
-                    sql.append(".");
-                    sql.append(join.getColumnName());
-                    // sql += " LEFT OUTER JOIN " + join.getTableName()
-                    // + " ON " + tableName + "." + join.getColumnName()
-                    // + " = " + join.getTableName() + "." +
-                    // join.getColumnName();
-                }
-                String additionalCondClause = join.getAdditionalCondClause();
-                if (!StringUtil.isEmpty(additionalCondClause)) {
-                    sql.append(" AND ");
-                    sql.append(additionalCondClause);
-                }
-                if (join.getAdditionalCondArgs() != null) {
-                    for (String arg : join.getAdditionalCondArgs()) {
-                        sqlArgsList.add(arg);
-                    }
-                }
-                // Adds the columns of the joined table.
-                final Field[] joinFields = getFields(join.getTableClass());
-                final List<String> joinFieldNames = getFieldNames(joinFields);
-                db = mHelper.getReadableDatabase();
-                StringBuilder joinColumns = new StringBuilder();
-                for (String fieldName : joinFieldNames) {
-                    if (joinColumns.length() > 0) {
-                        joinColumns.append(", ");
-                    }
-                    joinColumns.append(join.getTableName());
-                    joinColumns.append(".");
-                    joinColumns.append(fieldName);
-                }
-                if (joinColumns.length() > 0) {
-                    if (columns.length() > 0) {
-                        columns.append(", ");
-                    }
-                    columns.append(joinColumns);
-                }
-            }
-            StringBuilder sqlSelect = new StringBuilder();
-            sqlSelect.append("SELECT ");
-            sqlSelect.append(columns);
-            sqlSelect.append(" FROM ");
-            sqlSelect.append(tableName);
-            sqlSelect.append(sql);
-            // sql = "SELECT " + columns + " FROM " + tableName + sql;
-            if (!StringUtil.isEmpty(mWhereClause)) {
-                sqlSelect.append(" WHERE ");
-                sqlSelect.append(mWhereClause);
-                // sql += " WHERE " + mWhereClause;
-                for (String arg : mWhereArgs) {
-                    sqlArgsList.add(arg);
-                }
-            }
-            if (!StringUtil.isEmpty(mGroupByClause)) {
-                sqlSelect.append(" GROUP BY ");
-                sqlSelect.append(mGroupByClause);
-                // sql += " GROUP BY " + mGroupByClause;
-                if (!StringUtil.isEmpty(mHavingClause)) {
-                    sqlSelect.append(" HAVING ");
-                    sqlSelect.append(mHavingClause);
-                    // sql += " HAVING " + mHavingClause;
+            constructKeysetClause();
+            final String sql = createSelectSql();
+            final Object[] sqlArgs = createSelectArgs();
+            final long builtTime = timed ? System.nanoTime() : 0;
+            QueryKey resultKey = null;
+            long resultVersion = 0;
+            if (mCacheResult && QueryCache.isEnabled()) {
+                resultKey = new QueryKey(targetClass, mCollapseRows, sql, Arrays.asList(sqlArgs));
+                final List<T> cached = (List<T>) QueryCache.get(resultKey);
+                if (cached != null) {
+                    result.addAll(cached);
+                    return result;
                 }
+                resultVersion = QueryCache.getVersion();
             }
-            if (!StringUtil.isEmpty(mOrderByClause)) {
-                sqlSelect.append(" ORDER BY ");
-                sqlSelect.append(mOrderByClause);
-                // sql += " ORDER BY " + mOrderByClause;
+            if (mUseIdentityMap) {
+                mIdentityMap = IdentityMap.forQuery(mHelper);
             }
-            String[] sqlArgs = sqlArgsList.toArray(new String[] {});
 
             // Now, execute the complete query!
-            cursor = db.rawQuery(sqlSelect.toString(), sqlArgs);
+            db = ConnectionManager.acquire(mHelper, false);
+            recordQueryPlan(db, sql, sqlArgs);
+            cursor = ColumnCodecs.rawQuery(db, sql, sqlArgs);
 
             // Retrieves the selected values from the cursor
-            if (cursor.moveToFirst()) {
-                do {
-                    retrieveFromCursor(cursor, targetClass);
-                } while (cursor.moveToNext());
+            final boolean hasRows = cursor.moveToFirst();
+            final long executedTime = timed ? System.nanoTime() : 0;
+            if (hasRows) {
+                final int[][] columnIndexes = createColumnIndexes();
+                if (mCollapseRows) {
+                    collapseFromCursor(cursor, columnIndexes, result, cancelled);
+                } else {
+                    do {
+                        checkCancelled(cancelled);
+                        result.add(retrieveFromCursor(cursor, targetClass, columnIndexes));
+                    } while (cursor.moveToNext());
+                }
+            }
+            if (timed) {
+                event = new QueryEvent(QueryEvent.Type.SELECT, targetClass, sql);
+                event.setTimes(startTime, builtTime, executedTime, System.nanoTime());
+                event.setRowCount(cursor.getCount());
+                long blobBytes = 0;
+                for (T entity : result) {
+                    blobBytes += countBlobBytes(mMeta, entity);
+                }
+                event.setBlobBytes(blobBytes);
+            }
+            // The uncommitted values must not be cached
+            if (cacheVersion != EntityCache.NOT_CACHED && mSelectedFieldNames == null
+                    && !db.inTransaction()) {
+                for (T entity : result) {
+                    EntityCache.put(targetClass, getIdValues(mMeta, entity), entity,
+                            cacheVersion);
+                }
+            }
+            if (resultKey != null && !db.inTransaction()) {
+                QueryCache.put(resultKey, getTableNames(), new ArrayList<T>(result),
+                        resultVersion);
             }
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -428,96 +851,975 @@ public final class DatabaseManager {
                 cursor.close();
             }
             if (db != null) {
-                db.close();
+                ConnectionManager.release(mHelper, db);
             }
         }
+        if (event != null) {
+            fireQueryEvent(event);
+        }
         return result;
     }
 
     /**
-     * Executes database operation.<br>
-     * This returns the result code of the operation. Result code is the return
-     * values of {@link SQLiteDatabase#insert(String, String, ContentValues)} or
-     * other manipulation methods. This returns {@code -1} if this fails to
-     * execute.
+     * Executes search in the worker thread of {@link DatabaseExecutor}.
+     * <p>
+     * If the tag is given, the pending or running query of the same tag is
+     * cancelled, so only the latest query of a screen is executed. The
+     * running query stops at the next row when it is cancelled; the current
+     * step of SQLite cannot be interrupted on this API level.
      * 
-     * @return result of this operation
+     * @param <T> type of the entity to be searched
+     * @param tag tag to supersede the previous query, or {@code null}
+     * @param handler handler to deliver the result, or {@code null} to
+     *            deliver in the worker thread
+     * @param callback callback to receive the result, or {@code null}
+     * @return future of the list of the entities
      */
-    public long execute() {
-        long ret = -1;
-        SQLiteDatabase db = null;
-        try {
-            final String tableName = toDbName(mTarget.getClass().getSimpleName());
-            constructWhereClause();
-            switch (mProcessType) {
-                case INSERT:
-                    if (mContentValues.size() > 0) {
-                        db = mHelper.getWritableDatabase();
-                        ret = db.insert(tableName, null, mContentValues);
-                    }
-                    break;
-                case UPDATE:
-                    if (mContentValues.size() > 0) {
-                        db = mHelper.getWritableDatabase();
-                        ret = db.update(
-                                    tableName,
-                                    mContentValues,
-                                    mWhereClause,
-                                    mWhereArgs);
-                    }
-                    break;
-                case DELETE:
-                    db = mHelper.getWritableDatabase();
-                    ret = db.delete(tableName, mWhereClause, mWhereArgs);
-                    break;
-                default:
-                    throw new RuntimeException("Undefined process type!: " + mProcessType);
+    public <T> Future<List<T>> executeQueryAsync(final Object tag, final Handler handler,
+            final QueryCallback<List<T>> callback) {
+        // Each execution has its own flag, so this can be submitted again
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        return DatabaseExecutor.submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return DatabaseManager.this.<T> executeQuery(cancelled);
             }
-        } finally {
-            if (db != null) {
-                db.close();
+        }, tag, handler, callback, cancelled);
+    }
+
+    /**
+     * Executes database operation in the worker thread of
+     * {@link DatabaseExecutor}.<br>
+     * The write operations are not superseded; the cancellation drops the
+     * operation only if it is not started yet.
+     * 
+     * @param handler handler to deliver the result, or {@code null} to
+     *            deliver in the worker thread
+     * @param callback callback to receive the result of {@link #execute()},
+     *            or {@code null}
+     * @return future of the result of {@link #execute()}
+     */
+    public Future<Long> executeAsync(final Handler handler, final QueryCallback<Long> callback) {
+        return DatabaseExecutor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return Long.valueOf(execute());
             }
-        }
-        return ret;
+        }, null, handler, callback, null);
     }
 
     /**
-     * Sets the WHERE clause.
+     * Returns the helper of this operation.
      * 
-     * @param whereClause WHERE clause which is parameterized by '?'
-     * @param whereArgs arguments for parameterized WHERE clause
-     * @return database manager
+     * @return db helper
      */
-    public DatabaseManager where(final String whereClause, final String... whereArgs) {
-        mWhereClause = whereClause;
-        mWhereArgs = whereArgs;
-        return this;
+    SQLiteOpenHelper getHelper() {
+        return mHelper;
     }
 
     /**
-     * Sets the ORDER BY clause.
+     * Returns whether this operation is an UPDATE.
      * 
-     * @param orderByClause ORDER BY clause
-     * @return database manager
+     * @return true if this is prepared by
+     *         {@link #update(SQLiteOpenHelper, Object)}
      */
-    public DatabaseManager orderBy(final String orderByClause) {
-        mOrderByClause = orderByClause;
-        return this;
+    boolean isUpdate() {
+        return mProcessType == ProcessType.UPDATE;
     }
 
     /**
-     * Excludes the columns which value is {@code null}.
+     * Returns whether this operation writes the database.
      * 
-     * @return database manager
+     * @return true if this is an INSERT, UPDATE or DELETE
      */
-    public DatabaseManager excludesNull() {
-        ContentValues newValues = new ContentValues();
+    boolean isWrite() {
+        return mProcessType == ProcessType.INSERT || mProcessType == ProcessType.UPDATE
+                || mProcessType == ProcessType.DELETE;
+    }
+
+    /**
+     * Returns the key of the row which this operation writes.
+     * 
+     * @return entity class and the values of the primary keys, or
+     *         {@code null} if the row is not identified by the primary keys
+     */
+    List<Object> getRowKey() {
+        if (mProcessType == ProcessType.SELECT || mMeta.getIdColumns().length == 0) {
+            return null;
+        }
+        final List<String> idValues = getIdValues(mMeta, mTarget);
+        if (idValues.contains(null)) {
+            return null;
+        }
+        final List<Object> key = new ArrayList<Object>(idValues.size() + 1);
+        key.add(mMeta.getEntityClass());
+        key.addAll(idValues);
+        return key;
+    }
+
+    /**
+     * Merges the values of the later UPDATE of the same row into this one.
+     * 
+     * @param later UPDATE executed after this one
+     */
+    void mergeValues(final DatabaseManager later) {
+        mContentValues.putAll(later.mContentValues);
+    }
+
+    /**
+     * Throws the exception if the asynchronous query is cancelled.
+     * 
+     * @param cancelled cancellation flag of the execution, or {@code null}
+     */
+    private static void checkCancelled(final AtomicBoolean cancelled) {
+        if (cancelled != null && cancelled.get()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Counts the rows of the query without retrieving the entities.<br>
+     * The ORDER BY clause, the limit and the offset are ignored. If the query
+     * is grouped, this counts the groups.
+     * 
+     * @return number of the rows
+     */
+    public long count() {
+        if (StringUtil.isEmpty(mGroupByClause)) {
+            return Long.parseLong(queryScalar("COUNT(*)", null, null));
+        }
+        return Long.parseLong(queryScalar("1", "SELECT COUNT(*) FROM (", ")"));
+    }
+
+    /**
+     * Returns whether the query has any row, without retrieving the
+     * entities.<br>
+     * SQLite stops reading at the first row.
+     * 
+     * @return true if the query has any row
+     */
+    public boolean exists() {
+        return Long.parseLong(queryScalar("1", "SELECT EXISTS(", ")")) != 0;
+    }
+
+    /**
+     * Returns the maximum value of the field of the target table in the rows
+     * of the query.
+     * 
+     * @param fieldName name of the column field
+     * @return maximum value, or {@code 0} if there is no non-null value
+     */
+    public double max(final String fieldName) {
+        return toDouble(queryScalar("MAX(" + getQualifiedName(fieldName) + ")", null, null));
+    }
+
+    /**
+     * Returns the minimum value of the field of the target table in the rows
+     * of the query.
+     * 
+     * @param fieldName name of the column field
+     * @return minimum value, or {@code 0} if there is no non-null value
+     */
+    public double min(final String fieldName) {
+        return toDouble(queryScalar("MIN(" + getQualifiedName(fieldName) + ")", null, null));
+    }
+
+    /**
+     * Returns the sum of the field of the target table in the rows of the
+     * query.
+     * 
+     * @param fieldName name of the column field
+     * @return sum, or {@code 0} if there is no non-null value
+     */
+    public double sum(final String fieldName) {
+        return toDouble(queryScalar("TOTAL(" + getQualifiedName(fieldName) + ")", null, null));
+    }
+
+    /**
+     * Returns the average of the field of the target table in the rows of the
+     * query.
+     * 
+     * @param fieldName name of the column field
+     * @return average, or {@code 0} if there is no non-null value
+     */
+    public double avg(final String fieldName) {
+        return toDouble(queryScalar("AVG(" + getQualifiedName(fieldName) + ")", null, null));
+    }
+
+    /**
+     * Executes the query which selects the aggregate instead of the columns,
+     * and returns the single value.<br>
+     * The query is executed by the compiled statement, so no cursor or entity
+     * is created.
+     * 
+     * @param aggregate aggregate expression to select
+     * @param outerPrefix part of the outer statement before the query, or
+     *            {@code null} to select the aggregate itself
+     * @param outerSuffix part of the outer statement after the query
+     * @return selected value, or {@code null} if it is NULL
+     */
+    private String queryScalar(final String aggregate, final String outerPrefix,
+            final String outerSuffix) {
+        if (mProcessType != ProcessType.SELECT) {
+            throw new IllegalStateException("Not a SELECT operation: " + mProcessType);
+        }
+        if (outerPrefix == null && !StringUtil.isEmpty(mGroupByClause)) {
+            // Each group has its own value, and only the first one is selected
+            throw new IllegalStateException("Cannot aggregate the grouped query: "
+                    + aggregate);
+        }
+        final boolean timed = sQueryListeners.length > 0;
+        final long startTime = timed ? System.nanoTime() : 0;
+        SQLiteDatabase db = null;
+        SQLiteStatement statement = null;
+        final String value;
+        QueryEvent event = null;
+        try {
+            constructWhereClause();
+            constructKeysetClause();
+            mAggregate = aggregate;
+            String sql = createSelectSql();
+            if (outerPrefix != null) {
+                sql = outerPrefix + sql + outerSuffix;
+            }
+            final Object[] sqlArgs = createSelectArgs();
+            final long builtTime = timed ? System.nanoTime() : 0;
+            db = ConnectionManager.acquire(mHelper, false);
+            recordQueryPlan(db, sql, sqlArgs);
+            statement = db.compileStatement(sql);
+            for (int i = 0; i < sqlArgs.length; i++) {
+                ColumnCodecs.bindValue(statement, i + 1, sqlArgs[i]);
+            }
+            value = statement.simpleQueryForString();
+            if (timed) {
+                final long executedTime = System.nanoTime();
+                event = new QueryEvent(QueryEvent.Type.SELECT, mMeta.getEntityClass(), sql);
+                event.setTimes(startTime, builtTime, executedTime, executedTime);
+                event.setRowCount(1);
+            }
+        } finally {
+            mAggregate = null;
+            if (statement != null) {
+                statement.close();
+            }
+            if (db != null) {
+                ConnectionManager.release(mHelper, db);
+            }
+        }
+        if (event != null) {
+            fireQueryEvent(event);
+        }
+        return value;
+    }
+
+    /**
+     * Registers the listener which receives the {@link QueryEvent} of each
+     * operation of {@link #execute()}, {@link #executeQuery()},
+     * {@link #findById(SQLiteOpenHelper, Class, Object...)} and the
+     * aggregates.
+     * <p>
+     * The operations answered by the caches are not reported. The timings
+     * are not measured while no listener is registered.
+     * 
+     * @param listener listener to register
+     */
+    public static synchronized void addQueryListener(final QueryListener listener) {
+        final QueryListener[] listeners = new QueryListener[sQueryListeners.length + 1];
+        System.arraycopy(sQueryListeners, 0, listeners, 0, sQueryListeners.length);
+        listeners[listeners.length - 1] = listener;
+        sQueryListeners = listeners;
+    }
+
+    /**
+     * Unregisters the listener.
+     * 
+     * @param listener listener to unregister
+     */
+    public static synchronized void removeQueryListener(final QueryListener listener) {
+        final List<QueryListener> listeners = new ArrayList<QueryListener>(
+                Arrays.asList(sQueryListeners));
+        listeners.remove(listener);
+        sQueryListeners = listeners.toArray(new QueryListener[listeners.size()]);
+    }
+
+    /**
+     * Passes the event to the registered listeners.<br>
+     * This is called after the cursor and the connection are released. The
+     * exceptions of the listeners are logged and ignored, because the
+     * operation has already finished.
+     * 
+     * @param event event to pass
+     */
+    private static void fireQueryEvent(final QueryEvent event) {
+        for (QueryListener listener : sQueryListeners) {
+            try {
+                listener.onQuery(event);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "QueryListener failed: " + listener, e);
+            }
+        }
+    }
+
+    /**
+     * Creates the event of the INSERT, UPDATE or DELETE operation.
+     * 
+     * @param startTime time when the operation started
+     * @param builtTime time when the WHERE clause is built
+     * @param result result of {@link #execute()}
+     * @return event to pass to the listeners
+     */
+    private QueryEvent createWriteEvent(final long startTime, final long builtTime,
+            final long result) {
+        final long executedTime = System.nanoTime();
+        final QueryEvent event;
+        if (mProcessType == ProcessType.INSERT) {
+            // The statement is built by SQLiteDatabase, so build the shape
+            final StringBuilder sql = new StringBuilder("INSERT INTO ");
+            sql.append(mMeta.getTableName()).append(" (");
+            boolean first = true;
+            for (Entry<String, Object> entry : mContentValues.valueSet()) {
+                if (!first) {
+                    sql.append(", ");
+                }
+                sql.append(entry.getKey());
+                first = false;
+            }
+            sql.append(")");
+            event = new QueryEvent(QueryEvent.Type.INSERT, mMeta.getEntityClass(),
+                    sql.toString());
+            event.setRowCount(result == -1 ? 0 : 1);
+        } else {
+            event = new QueryEvent(mProcessType == ProcessType.UPDATE ? QueryEvent.Type.UPDATE
+                    : QueryEvent.Type.DELETE, mMeta.getEntityClass(), mExecutedSql);
+            event.setRowCount(result);
+        }
+        event.setTimes(startTime, builtTime, executedTime, executedTime);
+        event.setBlobBytes(countBlobBytes(mMeta, mTarget));
+        return event;
+    }
+
+    /**
+     * Returns the total bytes of the BLOB fields of the entity.
+     * 
+     * @param meta mapping information of the entity
+     * @param entity entity to count
+     * @return bytes of the BLOB values
+     */
+    private static long countBlobBytes(final EntityMeta meta, final Object entity) {
+        long bytes = 0;
+        for (ColumnMeta column : meta.getColumns()) {
+            if (column.getType() == byte[].class) {
+                try {
+                    final byte[] value = (byte[]) column.getField().get(entity);
+                    if (value != null) {
+                        bytes += value.length;
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Passes the SELECT statement to {@link QueryPlanAdvisor} if it is
+     * enabled.
+     * 
+     * @param db database to execute the statement
+     * @param sql SELECT statement
+     * @param sqlArgs arguments of the statement
+     */
+    private void recordQueryPlan(final SQLiteDatabase db, final String sql,
+            final Object[] sqlArgs) {
+        if (QueryPlanAdvisor.isEnabled()) {
+            QueryPlanAdvisor.record(db, sql, sqlArgs, mMeta, mJoinList, mWhereClause,
+                    mKeysetClause, mKeysetClause == null ? mOrderByClause
+                            : mKeysetOrderByClause);
+        }
+    }
+
+    /**
+     * Returns the qualified column name of the field of the target table.
+     * 
+     * @param fieldName name of the column field
+     * @return qualified column name
+     */
+    private String getQualifiedName(final String fieldName) {
+        for (ColumnMeta column : mMeta.getColumns()) {
+            if (column.getFieldName().equals(fieldName)) {
+                return column.getQualifiedName();
+            }
+        }
+        throw new IllegalArgumentException("Not a column field: " + fieldName);
+    }
+
+    /**
+     * Converts the selected value to {@code double}.
+     * 
+     * @param value selected value, or {@code null} if it is NULL
+     * @return value, or {@code 0} if it is NULL
+     */
+    private static double toDouble(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * Execute search, and returns the iterator which retrieves the entities
+     * one by one.
+     * <p>
+     * Unlike {@link #executeQuery()}, the entities are not retrieved until
+     * the iterator is advanced, so the memory does not grow with the size of
+     * the result. The iterator holds the cursor and the connection until it
+     * reaches the end or {@link EntityIterator#close()} is called.
+     * 
+     * @param <T> type of the entity to be searched
+     * @return iterator of the entities
+     */
+    public <T> EntityIterator<T> executeQueryIterator() {
+        @SuppressWarnings("unchecked")
+        Class<T> targetClass = (Class<T>) mTarget.getClass();
+        // Cannot execute other than SELECT operation
+        if (mProcessType != ProcessType.SELECT) {
+            return new EntityIterator<T>(this, targetClass, null, mHelper, null, null);
+        }
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        try {
+            constructWhereClause();
+            constructKeysetClause();
+            final String sql = createSelectSql();
+            final Object[] sqlArgs = createSelectArgs();
+            if (mUseIdentityMap) {
+                mIdentityMap = IdentityMap.forQuery(mHelper);
+            }
+
+            db = ConnectionManager.acquire(mHelper, false);
+            recordQueryPlan(db, sql, sqlArgs);
+            cursor = ColumnCodecs.rawQuery(db, sql, sqlArgs);
+            return new EntityIterator<T>(this, targetClass, createColumnIndexes(), mHelper, db,
+                    cursor);
+        } catch (RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (db != null) {
+                ConnectionManager.release(mHelper, db);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the SELECT statement.<br>
+     * The statement is reused from {@link SqlCache} if the query of the same
+     * shape has been executed before.
+     * 
+     * @return SELECT statement
+     */
+    private String createSelectSql() {
+        final List<Object> parts = new ArrayList<Object>();
+        parts.add(mMeta.getEntityClass());
+        parts.add(mAggregate);
+        parts.add(toList(mSelectedFieldNames));
+        for (Join join : mJoinList) {
+            parts.add(join.getType());
+            parts.add(join.getFieldName());
+            parts.add(join.getAdditionalCondClause());
+            parts.add(toList(join.getSelectedFieldNames()));
+        }
+        parts.add(mWhereClause);
+        parts.add(mGroupByClause);
+        parts.add(mHavingClause);
+        parts.add(mOrderByClause);
+        parts.add(mKeysetClause);
+        parts.add(Boolean.valueOf(mLimit >= 0));
+        parts.add(Boolean.valueOf(mOffset > 0));
+        final QueryKey key = new QueryKey(parts.toArray());
+        String sql = SqlCache.get(key);
+        if (sql == null) {
+            sql = buildSelectSql();
+            SqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Builds the SELECT statement from the target class, the joins and the
+     * clauses.
+     * 
+     * @return SELECT statement
+     */
+    private String buildSelectSql() {
+        // Gets columns of the target class.
+        final String tableName = mMeta.getTableName();
+        StringBuilder columns = new StringBuilder();
+        if (mAggregate == null) {
+            appendColumns(columns, mMeta, mSelectedFieldNames);
+        } else {
+            columns.append(mAggregate);
+        }
+        // Creates JOIN phrase
+        StringBuilder sql = new StringBuilder();
+        for (Join join : mJoinList) {
+            if (join.getType().equals(JoinType.INNER_JOIN)) {
+                sql.append(" INNER JOIN ");
+            } else if (join.getType().equals(JoinType.LEFT_OUTER_JOIN)) {
+                sql.append(" LEFT OUTER JOIN ");
+            }
+            sql.append(join.getTableName());
+            sql.append(" ON ");
+            sql.append(tableName);
+            sql.append(".");
+            sql.append(join.getColumnName());
+            sql.append(" = ");
+            sql.append(join.getTableName());
+            sql.append(".");
+            sql.append(join.getColumnName());
+            String additionalCondClause = join.getAdditionalCondClause();
+            if (!StringUtil.isEmpty(additionalCondClause)) {
+                sql.append(" AND ");
+                sql.append(additionalCondClause);
+            }
+            // Adds the columns of the joined table.
+            if (mAggregate == null) {
+                appendColumns(columns, EntityMeta.of(join.getTableClass()),
+                        join.getSelectedFieldNames());
+            }
+        }
+        StringBuilder sqlSelect = new StringBuilder();
+        sqlSelect.append("SELECT ");
+        sqlSelect.append(columns);
+        sqlSelect.append(" FROM ");
+        sqlSelect.append(tableName);
+        sqlSelect.append(sql);
+        if (!StringUtil.isEmpty(mWhereClause)) {
+            sqlSelect.append(" WHERE ");
+            if (mKeysetClause == null) {
+                sqlSelect.append(mWhereClause);
+            } else {
+                sqlSelect.append("(");
+                sqlSelect.append(mWhereClause);
+                sqlSelect.append(") AND (");
+                sqlSelect.append(mKeysetClause);
+                sqlSelect.append(")");
+            }
+        } else if (mKeysetClause != null) {
+            sqlSelect.append(" WHERE ");
+            sqlSelect.append(mKeysetClause);
+        }
+        if (!StringUtil.isEmpty(mGroupByClause)) {
+            sqlSelect.append(" GROUP BY ");
+            sqlSelect.append(mGroupByClause);
+            if (!StringUtil.isEmpty(mHavingClause)) {
+                sqlSelect.append(" HAVING ");
+                sqlSelect.append(mHavingClause);
+            }
+        }
+        if (mAggregate != null) {
+            // The order and the range do not affect the aggregate
+            return sqlSelect.toString();
+        }
+        if (mKeysetClause != null) {
+            sqlSelect.append(" ORDER BY ");
+            sqlSelect.append(mKeysetOrderByClause);
+        } else if (!StringUtil.isEmpty(mOrderByClause)) {
+            sqlSelect.append(" ORDER BY ");
+            sqlSelect.append(mOrderByClause);
+        }
+        if (mLimit >= 0 || mOffset > 0) {
+            // OFFSET requires LIMIT, and negative LIMIT means no limit
+            sqlSelect.append(" LIMIT ?");
+            if (mOffset > 0) {
+                sqlSelect.append(" OFFSET ?");
+            }
+        }
+        return sqlSelect.toString();
+    }
+
+    /**
+     * Appends the qualified names of the columns to select.
+     * 
+     * @param columns column list to append
+     * @param meta mapping information of the table
+     * @param selectedFieldNames field names to select, or {@code null} to
+     *            select all the columns
+     */
+    private void appendColumns(final StringBuilder columns, final EntityMeta meta,
+            final String[] selectedFieldNames) {
+        final boolean[] selected = getSelectedColumns(meta, selectedFieldNames);
+        if (selected == null) {
+            if (columns.length() > 0 && meta.getColumns().length > 0) {
+                columns.append(", ");
+            }
+            columns.append(meta.getQualifiedColumns());
+            return;
+        }
+        final ColumnMeta[] metaColumns = meta.getColumns();
+        for (int i = 0; i < metaColumns.length; i++) {
+            if (selected[i]) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append(metaColumns[i].getQualifiedName());
+            }
+        }
+    }
+
+    /**
+     * Returns the arguments of the SELECT statement in the order of the
+     * placeholders.<br>
+     * The values of the primary keys, the keyset pagination, the limit and
+     * the offset keep their types to be bound natively.
+     * 
+     * @return arguments of the SELECT statement
+     */
+    private Object[] createSelectArgs() {
+        List<Object> sqlArgsList = new ArrayList<Object>();
+        for (Join join : mJoinList) {
+            if (join.getAdditionalCondArgs() != null) {
+                for (String arg : join.getAdditionalCondArgs()) {
+                    sqlArgsList.add(arg);
+                }
+            }
+        }
+        if (!StringUtil.isEmpty(mWhereClause) && mWhereArgs != null) {
+            for (Object arg : mWhereArgs) {
+                sqlArgsList.add(arg);
+            }
+        }
+        if (mKeysetClause != null) {
+            for (Object arg : mKeysetArgs) {
+                sqlArgsList.add(arg);
+            }
+        }
+        if (mAggregate == null && (mLimit >= 0 || mOffset > 0)) {
+            sqlArgsList.add(Long.valueOf(mLimit));
+            if (mOffset > 0) {
+                sqlArgsList.add(Long.valueOf(mOffset));
+            }
+        }
+        return sqlArgsList.toArray();
+    }
+
+    /**
+     * Executes database operation.<br>
+     * This returns the result code of the operation. Result code is the return
+     * values of {@link SQLiteDatabase#insert(String, String, ContentValues)} or
+     * other manipulation methods. This returns {@code -1} if this fails to
+     * execute.
+     * 
+     * @return result of this operation
+     */
+    public long execute() {
+        long ret = -1;
+        final boolean timed = sQueryListeners.length > 0;
+        final long startTime = timed ? System.nanoTime() : 0;
+        SQLiteDatabase db = null;
+        QueryEvent event = null;
+        try {
+            final String tableName = mMeta.getTableName();
+            constructWhereClause();
+            final long builtTime = timed ? System.nanoTime() : 0;
+            switch (mProcessType) {
+                case INSERT:
+                    if (mContentValues.size() > 0) {
+                        db = ConnectionManager.acquire(mHelper, true);
+                        ret = db.insert(tableName, null, mContentValues);
+                    }
+                    break;
+                case UPDATE:
+                    if (mContentValues.size() > 0) {
+                        db = ConnectionManager.acquire(mHelper, true);
+                        ret = executeUpdate(db, tableName);
+                        if (mSnapshot != null && ret > 0) {
+                            ((Trackable) mTarget).setSnapshot(mSnapshot);
+                        }
+                    } else if (mSnapshot != null) {
+                        // Nothing is modified since the entity was loaded
+                        ret = 0;
+                    }
+                    break;
+                case DELETE:
+                    db = ConnectionManager.acquire(mHelper, true);
+                    ret = executeDelete(db, tableName);
+                    break;
+                default:
+                    throw new RuntimeException("Undefined process type!: " + mProcessType);
+            }
+            if (timed && db != null) {
+                event = createWriteEvent(startTime, builtTime, ret);
+            }
+        } finally {
+            if (db != null) {
+                if (EntityCache.isEnabled(mMeta.getEntityClass())) {
+                    CacheInvalidator.invalidateEntity(mMeta.getEntityClass(),
+                            getIdValues(mMeta, mTarget));
+                }
+                CacheInvalidator.invalidateTable(mMeta.getTableName());
+                ConnectionManager.release(mHelper, db);
+            }
+        }
+        if (event != null) {
+            fireQueryEvent(event);
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the WHERE clause.
+     * 
+     * @param whereClause WHERE clause which is parameterized by '?'
+     * @param whereArgs arguments for parameterized WHERE clause
+     * @return database manager
+     */
+    public DatabaseManager where(final String whereClause, final String... whereArgs) {
+        mWhereClause = whereClause;
+        mWhereArgs = whereArgs;
+        mIdValues = null;
+        return this;
+    }
+
+    /**
+     * Sets the WHERE clause to select by the primary keys of the target
+     * object.
+     * <p>
+     * If the cache of the target class is enabled by {@link EntityCache}, the
+     * cached entity is returned without accessing the database unless a
+     * table is joined.
+     * 
+     * @return database manager
+     */
+    public DatabaseManager whereId() {
+        final ColumnMeta[] idColumns = mMeta.getIdColumns();
+        if (idColumns.length == 0) {
+            throw new IllegalStateException("No primary key in "
+                    + mMeta.getEntityClass().getName());
+        }
+        final Object[] idArgs = new Object[idColumns.length];
+        final List<String> idValues = new ArrayList<String>(idColumns.length);
+        final StringBuilder whereClause = new StringBuilder();
+        for (int i = 0; i < idColumns.length; i++) {
+            idArgs[i] = getFieldValue(idColumns[i], mTarget);
+            if (idArgs[i] == null) {
+                throw new IllegalArgumentException("Primary key is null: "
+                        + idColumns[i].getFieldName());
+            }
+            idValues.add(idArgs[i].toString());
+            if (i > 0) {
+                whereClause.append(" AND ");
+            }
+            whereClause.append(idColumns[i].getQualifiedName()).append(" = ?");
+        }
+        mWhereClause = whereClause.toString();
+        mWhereArgs = idArgs;
+        mIdValues = idValues;
+        return this;
+    }
+
+    /**
+     * Sets the ORDER BY clause.
+     * 
+     * @param orderByClause ORDER BY clause
+     * @return database manager
+     */
+    public DatabaseManager orderBy(final String orderByClause) {
+        mOrderByClause = orderByClause;
+        return this;
+    }
+
+    /**
+     * Selects only the specified fields of the target table.
+     * <p>
+     * The other fields of the entities keep their default values. The
+     * primary keys are always selected. This reduces the data read into the
+     * cursor window, for example when the table has large TEXT or BLOB
+     * columns which are not needed.
+     * 
+     * @param fieldNames names of the fields to select
+     * @return database manager
+     */
+    public DatabaseManager selectFields(final String... fieldNames) {
+        getSelectedColumns(mMeta, fieldNames);
+        mSelectedFieldNames = fieldNames;
+        return this;
+    }
+
+    /**
+     * Selects only the specified fields of the joined table.
+     * <p>
+     * Call this after joining the table. The other fields of the joined
+     * entities keep their default values. The primary keys are always
+     * selected.
+     * 
+     * @param relationFieldName field name of the joined relation
+     * @param fieldNames names of the fields of the joined entity to select
+     * @return database manager
+     */
+    public DatabaseManager selectJoinedFields(final String relationFieldName,
+            final String... fieldNames) {
+        for (Join join : mJoinList) {
+            if (join.getFieldName().equals(relationFieldName)) {
+                getSelectedColumns(EntityMeta.of(join.getTableClass()), fieldNames);
+                join.setSelectedFieldNames(fieldNames);
+                return this;
+            }
+        }
+        throw new IllegalArgumentException("Relation is not joined: " + relationFieldName);
+    }
+
+    /**
+     * Sets the maximum number of the rows to select.
+     * <p>
+     * If a {@code OneToMany} relation is joined, this limits the number of the
+     * joined rows, not the number of the entities.
+     * 
+     * @param limit maximum number of the rows, or {@code -1} for no limit
+     * @return database manager
+     */
+    public DatabaseManager limit(final int limit) {
+        mLimit = limit;
+        return this;
+    }
+
+    /**
+     * Sets the number of the rows to skip.
+     * <p>
+     * SQLite still reads the skipped rows, so the deep pages become slow. Use
+     * {@link #after(Object)} for the pagination of the large tables.
+     * 
+     * @param offset number of the rows to skip
+     * @return database manager
+     */
+    public DatabaseManager offset(final int offset) {
+        mOffset = offset;
+        return this;
+    }
+
+    /**
+     * Selects the rows after the entity in the order of the ORDER BY clause
+     * (keyset pagination).
+     * <p>
+     * Pass the last entity of the previous page, and set the page size by
+     * {@link #limit(int)}. The condition is built on the columns of the ORDER
+     * BY clause, and the primary keys are appended to the ORDER BY clause to
+     * make the order unique. So the index on these columns can be used, and
+     * the deep pages cost as much as the first page.
+     * <p>
+     * The ORDER BY clause must consist of the columns of the target table
+     * with optional {@code ASC} or {@code DESC}, and the values of these
+     * columns of the entity must not be {@code null}. If the ORDER BY clause
+     * is not set, the rows are ordered by the primary keys.
+     * 
+     * @param lastEntity last entity of the previous page, or {@code null} for
+     *            the first page
+     * @return database manager
+     */
+    public DatabaseManager after(final Object lastEntity) {
+        mAfter = lastEntity;
+        return this;
+    }
+
+    /**
+     * Collapses the joined rows of the same entity into one entity.
+     * <p>
+     * By default, a new entity is created for each row, so an entity with
+     * {@code n} children of a joined {@code OneToMany} relation is returned as
+     * {@code n} entities which have one child each. In this mode, the rows are
+     * grouped by the primary keys of the target table, and each entity is
+     * created once with all its children in one list. The rows which have no
+     * joined child (by the left outer join) add no child, and the same child is
+     * added only once even if several {@code OneToMany} relations are joined.
+     * <p>
+     * The target class and the joined classes must have the primary keys;
+     * otherwise {@code IllegalStateException} is thrown by this method or by
+     * the join. The entities are returned in the order of their first rows.
+     * This affects only {@link #executeQuery()}, and {@link #limit(int)} still
+     * limits the number of the rows.
+     * 
+     * @return database manager
+     */
+    public DatabaseManager collapseRows() {
+        checkIdColumns(mMeta);
+        for (Join join : mJoinList) {
+            checkIdColumns(EntityMeta.of(join.getTableClass()));
+        }
+        mCollapseRows = true;
+        return this;
+    }
+
+    /**
+     * Checks that the entity has the primary keys, which identify the
+     * entities to collapse.
+     * 
+     * @param meta mapping information of the entity
+     * @throws IllegalStateException if the entity has no primary key
+     */
+    private static void checkIdColumns(final EntityMeta meta) {
+        if (meta.getIdColumns().length == 0) {
+            throw new IllegalStateException("No primary key in "
+                    + meta.getEntityClass().getName());
+        }
+    }
+
+    /**
+     * Resolves the rows of the same primary keys to the same instance.
+     * <p>
+     * The entities are kept in the identity map keyed by the class and the
+     * primary keys, and the entity which is already retrieved is reused
+     * without mapping the row again. This saves the memory and the time when
+     * many rows refer the same {@code ManyToOne} entity. The map is scoped to
+     * the query, or to the transaction if the query is executed in
+     * {@link #inTransaction(SQLiteOpenHelper, TransactionWork)}.
+     * <p>
+     * The target entities are resolved by the map only if no
+     * {@code OneToMany} relation is joined; use {@link #collapseRows()} to
+     * merge them. The entities without the primary keys, and the entities of
+     * which only some columns are selected by {@link #selectFields(String...)}
+     * or {@link #selectJoinedFields(String, String...)}, are always created
+     * and not shared.
+     * 
+     * @return database manager
+     */
+    public DatabaseManager useIdentityMap() {
+        mUseIdentityMap = true;
+        return this;
+    }
+
+    /**
+     * Caches the result of this query by {@link QueryCache}.
+     * <p>
+     * The same query with the same arguments returns the cached entities
+     * without accessing the database, until any of the tables of the query is
+     * written by {@code DatabaseManager}. The cached entities are shared, so
+     * they must not be modified. The result is not cached if the query is
+     * executed in a transaction.
+     * 
+     * @return database manager
+     */
+    public DatabaseManager cacheResult() {
+        mCacheResult = true;
+        return this;
+    }
+
+    /**
+     * Excludes the columns which value is {@code null}.
+     * 
+     * @return database manager
+     */
+    public DatabaseManager excludesNull() {
+        final List<String> nullKeys = new ArrayList<String>();
         for (Entry<String, Object> entry : mContentValues.valueSet()) {
-            if (entry.getValue() != null) {
-                newValues.put(entry.getKey(), (String) entry.getValue());
+            if (entry.getValue() == null) {
+                nullKeys.add(entry.getKey());
             }
         }
-        mContentValues = newValues;
+        for (String key : nullKeys) {
+            mContentValues.remove(key);
+        }
         return this;
     }
 
@@ -527,106 +1829,412 @@ public final class DatabaseManager {
      * @param <T> type of the entity
      * @param cursor the opened cursor to get an entity
      * @param targetClass the class of the entity
+     * @param columnIndexes the cursor indexes of the target class and the
+     *            joined classes created by {@link #createColumnIndexes()}
      * @return the entity retrieved from the cursor
      * @throws Exception if the instantiation of the entity failed
      */
     @SuppressWarnings({
             "unchecked", "rawtypes"
     })
-    private <T> T retrieveFromCursor(final Cursor cursor, final Class<T> targetClass)
-            throws Exception {
-        final T entity = targetClass.newInstance();
-        final Field[] fields = getFields(targetClass);
-        int cursorPos = 0;
-        for (Field field : fields) {
-            // Skip non-column fields
-            if (field.getAnnotation(Column.class) != null) {
-                cursorPos = setFieldValuesByCursor(field, entity, cursor, cursorPos);
+    <T> T retrieveFromCursor(final Cursor cursor, final Class<T> targetClass,
+            final int[][] columnIndexes) throws Exception {
+        IdentityMap targetIdentityMap = mIdentityMap;
+        for (Join join : mJoinList) {
+            if (mMeta.getRelation(join.getFieldName()).isToMany()) {
+                // The list of the shared instance must not be appended
+                targetIdentityMap = null;
+                break;
             }
         }
-        for (Join join : mJoinList) {
+        final T entity = (T) resolveEntity(mMeta, cursor, columnIndexes[0], targetIdentityMap);
+        for (int i = 0; i < mJoinList.size(); i++) {
+            final Join join = mJoinList.get(i);
             // Initializes the relation field.
             // If it is annotated as OneToMany, then assumes it as
             // an List, and adds an new entity to the list.
-            final Field relationField = entity.getClass().getField(join.getFieldName());
-            final OneToMany oneToMany = relationField.getAnnotation(OneToMany.class);
-            final Object relation;
-            if (oneToMany == null) {
-                // Must be a normal class
-                relation = relationField.getType().newInstance();
-                relationField.set(entity, relation);
+            final RelationMeta relationMeta = mMeta.getRelation(join.getFieldName());
+            final EntityMeta joinMeta = EntityMeta.of(join.getTableClass());
+            final Object relation = resolveEntity(joinMeta, cursor, columnIndexes[i + 1],
+                    mIdentityMap);
+            if (relationMeta.isToMany()) {
+                ((List) relationMeta.getField().get(entity)).add(relation);
             } else {
-                // Must be a parameterized List
-                ParameterizedType parameterizedType = (ParameterizedType) relationField
-                        .getGenericType();
-                Class<?> joinClass = (Class<?>) parameterizedType
-                        .getActualTypeArguments()[0];
-                relation = joinClass.newInstance();
-                ((List) relationField.get(entity)).add(relation);
-            }
-
-            final Field[] joinFields = getFields(join.getTableClass());
-            for (Field joinField : joinFields) {
-                // Skip non-column fields
-                if (joinField.getAnnotation(Column.class) == null) {
+                relationMeta.getField().set(entity, relation);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Retrieves the entities from all the rows of the cursor, collapsing the
+     * rows of the same primary keys into one entity.
+     * 
+     * @param <T> type of the entity
+     * @param cursor the cursor moved to the first row
+     * @param columnIndexes the cursor indexes of the target class and the
+     *            joined classes created by {@link #createColumnIndexes()}
+     * @param result list to add the entities
+     * @param cancelled cancellation flag of the execution, or {@code null}
+     * @throws Exception if the instantiation of the entity failed
+     */
+    @SuppressWarnings({
+            "unchecked", "rawtypes"
+    })
+    private <T> void collapseFromCursor(final Cursor cursor, final int[][] columnIndexes,
+            final List<T> result, final AtomicBoolean cancelled) throws Exception {
+        final Map<List<String>, T> entities = new HashMap<List<String>, T>();
+        final Set<List<Object>> children = new HashSet<List<Object>>();
+        final EntityMeta[] joinMetas = new EntityMeta[mJoinList.size()];
+        final RelationMeta[] relationMetas = new RelationMeta[mJoinList.size()];
+        for (int i = 0; i < joinMetas.length; i++) {
+            final Join join = mJoinList.get(i);
+            joinMetas[i] = EntityMeta.of(join.getTableClass());
+            relationMetas[i] = mMeta.getRelation(join.getFieldName());
+        }
+        do {
+            checkCancelled(cancelled);
+            final List<String> key = getIdValues(mMeta, cursor, columnIndexes[0]);
+            T entity = entities.get(key);
+            final boolean created = entity == null;
+            if (created) {
+                entity = (T) newEntity(mMeta);
+                setFieldValuesByCursor(mMeta, entity, cursor, columnIndexes[0]);
+                entities.put(key, entity);
+                result.add(entity);
+            }
+            for (int i = 0; i < joinMetas.length; i++) {
+                if (!created && !relationMetas[i].isToMany()) {
                     continue;
                 }
-                cursorPos = setFieldValuesByCursor(joinField, relation, cursor,
-                        cursorPos);
+                final List<String> childKey = getIdValues(joinMetas[i], cursor,
+                        columnIndexes[i + 1]);
+                if (childKey == null) {
+                    // No joined row
+                    continue;
+                }
+                if (relationMetas[i].isToMany()
+                        && !children.add(Arrays.<Object> asList(key, i, childKey))) {
+                    continue;
+                }
+                final Object relation = resolveEntity(joinMetas[i], cursor,
+                        columnIndexes[i + 1], mIdentityMap);
+                if (relationMetas[i].isToMany()) {
+                    ((List) relationMetas[i].getField().get(entity)).add(relation);
+                } else {
+                    relationMetas[i].getField().set(entity, relation);
+                }
+            }
+        } while (cursor.moveToNext());
+    }
+
+    /**
+     * Returns the entity of the current row of the cursor.<br>
+     * If the identity map is given and it has the entity of the same primary
+     * keys, the entity is returned without mapping the row. The map is not
+     * used if only some of the columns are selected, because the entity is
+     * not complete.
+     * 
+     * @param meta mapping information of the entity
+     * @param cursor the opened cursor
+     * @param columnIndexes the cursor indexes for each column
+     * @param identityMap identity map, or {@code null} to create a new entity
+     * @return entity
+     * @throws Exception if the instantiation of the entity failed
+     */
+    private Object resolveEntity(final EntityMeta meta, final Cursor cursor,
+            final int[] columnIndexes, final IdentityMap identityMap) throws Exception {
+        List<String> ids = null;
+        if (identityMap != null && isAllColumnsSelected(columnIndexes)) {
+            ids = getIdValues(meta, cursor, columnIndexes);
+            if (ids != null) {
+                final Object entity = identityMap.get(meta.getEntityClass(), ids);
+                if (entity != null) {
+                    return entity;
+                }
             }
         }
+        final Object entity = newEntity(meta);
+        setFieldValuesByCursor(meta, entity, cursor, columnIndexes);
+        if (ids != null) {
+            identityMap.put(meta.getEntityClass(), ids, entity);
+        }
         return entity;
     }
 
     /**
-     * Convert the name(class or field name in camel format) to database name
-     * format; All characters are upper-case and are delimited by
-     * underscore('_').
-     * <p>
-     * The argument name is assumed to be the following format.
-     * 
-     * <pre>
-     * {@code ([a-zA-Z][a-z0-9_\\$]*)([A-Z][a-z0-9_\\$]*)* }
-     * </pre>
-     * 
-     * @param name name to convert
-     * @return converted name
-     */
-    private String toDbName(final String name) {
-        String dbName = "";
-        for (int i = 0; i < name.length(); i++) {
-            String c = name.substring(i, i + 1);
-            // Assume upper case characters as the delimiters of the words.
-            if (c.matches("[A-Z]")) {
-                dbName += "_" + c;
+     * Returns the names of the target table and the joined tables.
+     * 
+     * @return names of the tables
+     */
+    private String[] getTableNames() {
+        final String[] tableNames = new String[mJoinList.size() + 1];
+        tableNames[0] = mMeta.getTableName();
+        for (int i = 0; i < mJoinList.size(); i++) {
+            tableNames[i + 1] = mJoinList.get(i).getTableName();
+        }
+        return tableNames;
+    }
+
+    /**
+     * Returns whether the query selects an entity by {@link #whereId()} and
+     * can be answered by {@link EntityCache}.
+     * 
+     * @return true if the query can be answered by the cache
+     */
+    private boolean isCacheableIdQuery() {
+        return mIdValues != null && mJoinList.isEmpty() && mAfter == null && mOffset == 0
+                && mLimit != 0;
+    }
+
+    /**
+     * Returns the values of the primary keys of the entity in the same form
+     * as {@link #getIdValues(EntityMeta, Cursor, int[])}.
+     * 
+     * @param meta mapping information of the entity
+     * @param entity entity to get the values
+     * @return values of the primary keys
+     */
+    private static List<String> getIdValues(final EntityMeta meta, final Object entity) {
+        final ColumnMeta[] idColumns = meta.getIdColumns();
+        final List<String> values = new ArrayList<String>(idColumns.length);
+        for (ColumnMeta column : idColumns) {
+            values.add(getFieldValueAsString(column, entity));
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of the primary keys in the current row of the
+     * cursor.
+     * 
+     * @param meta mapping information of the table
+     * @param cursor the opened cursor
+     * @param columnIndexes the cursor indexes for each column
+     * @return values of the primary keys, or {@code null} if the table has no
+     *         primary key or any of them is {@code null}
+     */
+    private static List<String> getIdValues(final EntityMeta meta, final Cursor cursor,
+            final int[] columnIndexes) {
+        final ColumnMeta[] columns = meta.getColumns();
+        final List<String> values = new ArrayList<String>(meta.getIdColumns().length);
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isId()) {
+                if (cursor.isNull(columnIndexes[i])) {
+                    return null;
+                }
+                values.add(cursor.getString(columnIndexes[i]));
+            }
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        return values;
+    }
+
+    /**
+     * Creates the cursor indexes of the columns of the target class and the
+     * joined classes in the order of the SELECT clause.
+     * 
+     * @return the cursor indexes; the first element is for the target class
+     *         and the others are for the joins
+     */
+    private int[][] createColumnIndexes() {
+        final int[][] columnIndexes = new int[mJoinList.size() + 1][];
+        int cursorPos = 0;
+        for (int i = 0; i < columnIndexes.length; i++) {
+            final EntityMeta meta;
+            if (i == 0) {
+                meta = mMeta;
+            } else {
+                meta = EntityMeta.of(mJoinList.get(i - 1).getTableClass());
+            }
+            final boolean[] selected;
+            if (i == 0) {
+                selected = getSelectedColumns(meta, mSelectedFieldNames);
             } else {
-                dbName += c;
+                selected = getSelectedColumns(meta, mJoinList.get(i - 1)
+                        .getSelectedFieldNames());
+            }
+            final int[] indexes = new int[meta.getColumns().length];
+            for (int j = 0; j < indexes.length; j++) {
+                if (selected == null || selected[j]) {
+                    indexes[j] = cursorPos++;
+                } else {
+                    indexes[j] = -1;
+                }
+            }
+            columnIndexes[i] = indexes;
+        }
+        return columnIndexes;
+    }
+
+    /**
+     * Returns whether all the columns of the entity are selected.
+     * 
+     * @param columnIndexes the cursor indexes for each column
+     * @return true if no column is excluded by the projection
+     */
+    private static boolean isAllColumnsSelected(final int[] columnIndexes) {
+        for (int index : columnIndexes) {
+            if (index < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns which columns are selected.
+     * 
+     * @param meta mapping information of the table
+     * @param selectedFieldNames field names to select, or {@code null} to
+     *            select all the columns
+     * @return flags for each column, or {@code null} if all the columns are
+     *         selected
+     */
+    private static boolean[] getSelectedColumns(final EntityMeta meta,
+            final String[] selectedFieldNames) {
+        if (selectedFieldNames == null) {
+            return null;
+        }
+        final ColumnMeta[] columns = meta.getColumns();
+        final boolean[] selected = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selected[i] = columns[i].isId();
+        }
+        for (String fieldName : selectedFieldNames) {
+            boolean found = false;
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].getFieldName().equals(fieldName)) {
+                    selected[i] = true;
+                    found = true;
+                    break;
+                }
             }
+            if (!found) {
+                throw new IllegalArgumentException("Not a column field: " + fieldName);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Returns the array as a list which can be compared by the contents.
+     * 
+     * @param array array to convert
+     * @return list, or {@code null} if the array is {@code null}
+     */
+    private static List<String> toList(final String[] array) {
+        if (array == null) {
+            return null;
+        }
+        return Arrays.asList(array);
+    }
+
+    /**
+     * Creates a new entity, using the generated row mapper if it exists.
+     * 
+     * @param meta mapping information of the entity
+     * @return new entity
+     * @throws Exception if the instantiation of the entity failed
+     */
+    private static Object newEntity(final EntityMeta meta) throws Exception {
+        final RowMapper<?> mapper = meta.getRowMapper();
+        if (mapper != null) {
+            return mapper.newInstance();
+        }
+        return meta.getEntityClass().newInstance();
+    }
+
+    /**
+     * Returns the value from target object's field, converted to the database
+     * value by the codec of the column.
+     * 
+     * @param column target column
+     * @param targetObject target object
+     * @return value of the column
+     */
+    private static Object getFieldValue(final ColumnMeta column, final Object targetObject) {
+        try {
+            return column.getCodec().toDatabaseValue(column.getField(), targetObject);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Converts the value of the field to the database value by the codec of
+     * the column.<br>
+     * The custom codecs convert only the field of an entity, so the value is
+     * set to a new entity for them.
+     * 
+     * @param meta mapping information of the entity
+     * @param column target column
+     * @param value non-null value of the field
+     * @return database value
+     */
+    private static Object toDatabaseValue(final EntityMeta meta, final ColumnMeta column,
+            final Object value) {
+        final ColumnCodec codec = column.getCodec();
+        if (ColumnCodecs.isBuiltIn(codec)) {
+            return ColumnCodecs.toDatabaseValue(codec, value);
         }
-        dbName = dbName.toUpperCase(Locale.ENGLISH);
-        // Removes the underscores if this name is the class name
-        if (dbName.startsWith("_")) {
-            dbName = dbName.substring(1);
+        try {
+            final Object entity = newEntity(meta);
+            column.getField().set(entity, value);
+            return codec.toDatabaseValue(column.getField(), entity);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
-        return dbName;
     }
 
     /**
      * Returns the value as string from target object's field. Returns
      * {@code null}, if the value is {@code null}.
      * 
-     * @param field target field
+     * @param column target column
      * @param targetObject target object
      * @return value in string
      */
-    private String getFieldValueAsString(final Field field, final Object targetObject) {
-        Object value;
+    private static String getFieldValueAsString(final ColumnMeta column,
+            final Object targetObject) {
+        final Object value = getFieldValue(column, targetObject);
+        return (value == null) ? null : value.toString();
+    }
+
+    /**
+     * Binds the field values of the target object to the statement in the
+     * order of the columns.
+     * 
+     * @param statement compiled statement
+     * @param columns columns to bind
+     * @param targetObject target object
+     */
+    private static void bindColumns(final SQLiteStatement statement,
+            final ColumnMeta[] columns, final Object targetObject) {
+        statement.clearBindings();
+        for (int i = 0; i < columns.length; i++) {
+            bindColumn(statement, i + 1, columns[i], targetObject);
+        }
+    }
+
+    /**
+     * Binds the field value of the target object to the statement.<br>
+     * The primitive values are bound without boxing.
+     * 
+     * @param statement compiled statement
+     * @param index index of the parameter, starting from 1
+     * @param column column to bind
+     * @param targetObject target object
+     */
+    private static void bindColumn(final SQLiteStatement statement, final int index,
+            final ColumnMeta column, final Object targetObject) {
         try {
-            value = field.get(targetObject);
-        } catch (Exception e) {
+            column.getCodec().bind(statement, index, column.getField(), targetObject);
+        } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
-        return (value == null) ? null : value.toString();
     }
 
     /**
@@ -637,84 +2245,259 @@ public final class DatabaseManager {
      */
     private void constructWhereClause() {
         if (mWhereClauseMap.size() > 0) {
-            mWhereClause = "";
-            final ArrayList<String> whereArgsList = new ArrayList<String>();
-            for (String columnName : mWhereClauseMap.keySet()) {
-                if (mWhereClause.length() > 0) {
-                    mWhereClause += " AND ";
-                }
-                final String valueString = mWhereClauseMap.get(columnName);
-                if (valueString == null) {
-                    mWhereClause += columnName + " IS NULL";
+            final StringBuilder whereClause = new StringBuilder();
+            final ArrayList<Object> whereArgsList = new ArrayList<Object>();
+            for (Entry<String, Object> entry : mWhereClauseMap.entrySet()) {
+                if (whereClause.length() > 0) {
+                    whereClause.append(" AND ");
+                }
+                whereClause.append(entry.getKey());
+                if (entry.getValue() == null) {
+                    whereClause.append(" IS NULL");
                 } else {
-                    mWhereClause += columnName + " = ?";
-                    whereArgsList.add(valueString);
+                    whereClause.append(" = ?");
+                    whereArgsList.add(entry.getValue());
                 }
             }
-            mWhereArgs = whereArgsList.toArray(new String[] {});
+            mWhereClause = whereClause.toString();
+            mWhereBindArgs = whereArgsList.toArray();
+        } else {
+            mWhereBindArgs = mWhereArgs;
+        }
+    }
+
+    /**
+     * Executes UPDATE statement with the values and the WHERE clause.<br>
+     * The values are bound with their types, so the numbers are compared and
+     * stored as numbers.
+     * 
+     * @param db writable database
+     * @param tableName table to update
+     * @return number of the updated rows
+     */
+    private long executeUpdate(final SQLiteDatabase db, final String tableName) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ");
+        sql.append(tableName);
+        sql.append(" SET ");
+        final int whereArgCount = mWhereBindArgs == null ? 0 : mWhereBindArgs.length;
+        final Object[] bindArgs = new Object[mContentValues.size() + whereArgCount];
+        int i = 0;
+        for (Entry<String, Object> entry : mContentValues.valueSet()) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(entry.getKey());
+            sql.append(" = ?");
+            bindArgs[i++] = entry.getValue();
+        }
+        if (!StringUtil.isEmpty(mWhereClause)) {
+            sql.append(" WHERE ");
+            sql.append(mWhereClause);
+            for (int j = 0; j < whereArgCount; j++) {
+                bindArgs[i++] = mWhereBindArgs[j];
+            }
+        }
+        mExecutedSql = sql.toString();
+        return executeUpdateDelete(db, mExecutedSql, bindArgs, i);
+    }
+
+    /**
+     * Executes DELETE statement with the WHERE clause.
+     * 
+     * @param db writable database
+     * @param tableName table to delete from
+     * @return number of the deleted rows
+     */
+    private long executeDelete(final SQLiteDatabase db, final String tableName) {
+        String sql = "DELETE FROM " + tableName;
+        int bindArgCount = 0;
+        if (!StringUtil.isEmpty(mWhereClause)) {
+            sql += " WHERE " + mWhereClause;
+            bindArgCount = mWhereBindArgs == null ? 0 : mWhereBindArgs.length;
         }
+        mExecutedSql = sql;
+        return executeUpdateDelete(db, sql, mWhereBindArgs, bindArgCount);
     }
 
     /**
-     * Returns the field array of the target class.
+     * Executes UPDATE or DELETE statement, and returns the number of the
+     * changed rows.
      * 
-     * @param targetClass the target class to get fields
-     * @return the array of the fields
+     * @param db writable database
+     * @param sql UPDATE or DELETE statement
+     * @param bindArgs arguments to bind
+     * @param bindArgCount number of the arguments to bind
+     * @return number of the changed rows
      */
-    private Field[] getFields(final Class<?> targetClass) {
-        final Field[] fields = targetClass.getFields();
-        Arrays.sort(fields, new FieldOrderComparator());
-        return fields;
+    private static long executeUpdateDelete(final SQLiteDatabase db, final String sql,
+            final Object[] bindArgs, final int bindArgCount) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            for (int i = 0; i < bindArgCount; i++) {
+                ColumnCodecs.bindValue(statement, i + 1, bindArgs[i]);
+            }
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+        // SQLiteStatement#executeUpdateDelete() is not available on API 7
+        statement = db.compileStatement("SELECT changes()");
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
     }
 
     /**
-     * Returns the names of the fields as an list.
+     * Puts the value to the {@link ContentValues} with its type.
      * 
-     * @param fields the target fields in array
-     * @return the names of the fields
+     * @param values values to put to
+     * @param key column name
+     * @param value value to put
+     */
+    private static void putValue(final ContentValues values, final String key,
+            final Object value) {
+        if (value == null) {
+            values.putNull(key);
+        } else if (value instanceof String) {
+            values.put(key, (String) value);
+        } else if (value instanceof Long) {
+            values.put(key, (Long) value);
+        } else if (value instanceof Integer) {
+            values.put(key, (Integer) value);
+        } else if (value instanceof Short) {
+            values.put(key, (Short) value);
+        } else if (value instanceof Byte) {
+            values.put(key, (Byte) value);
+        } else if (value instanceof Double) {
+            values.put(key, (Double) value);
+        } else if (value instanceof Float) {
+            values.put(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            values.put(key, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            values.put(key, (byte[]) value);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+
+    /**
+     * Constructs the WHERE condition and the ORDER BY clause of the keyset
+     * pagination from {@link #after(Object)}.
+     * <p>
+     * For the order {@code A ASC, B DESC}, the condition is
+     * {@code (A > ?) OR (A = ? AND B < ?)}.
      */
-    private List<String> getFieldNames(final Field[] fields) {
-        final List<String> fieldNames = new ArrayList<String>();
-        for (Field field : fields) {
-            // Skip non-column fields
-            if (field.getAnnotation(Column.class) == null) {
-                continue;
+    private void constructKeysetClause() {
+        mKeysetClause = null;
+        mKeysetArgs = null;
+        mKeysetOrderByClause = null;
+        if (mAfter == null) {
+            return;
+        }
+        final List<ColumnMeta> columns = new ArrayList<ColumnMeta>();
+        final List<Boolean> descending = new ArrayList<Boolean>();
+        final StringBuilder orderBy = new StringBuilder();
+        if (!StringUtil.isEmpty(mOrderByClause)) {
+            for (String term : mOrderByClause.split(",")) {
+                final String[] tokens = term.trim().split("\\s+");
+                String columnName = tokens[0];
+                final int dot = columnName.indexOf('.');
+                if (dot >= 0 && columnName.substring(0, dot)
+                        .equalsIgnoreCase(mMeta.getTableName())) {
+                    columnName = columnName.substring(dot + 1);
+                }
+                final ColumnMeta column = mMeta.getColumn(columnName);
+                if (column == null || tokens.length > 2 || (tokens.length == 2
+                        && !tokens[1].equalsIgnoreCase("ASC")
+                        && !tokens[1].equalsIgnoreCase("DESC"))) {
+                    throw new IllegalArgumentException(
+                            "Cannot use the ORDER BY term for the keyset pagination: " + term);
+                }
+                columns.add(column);
+                descending.add(Boolean.valueOf(tokens.length == 2
+                        && tokens[1].equalsIgnoreCase("DESC")));
             }
-            fieldNames.add(toDbName(field.getName()));
+            orderBy.append(mOrderByClause);
         }
-        return fieldNames;
+        // Appends the primary keys to make the order unique
+        for (ColumnMeta id : mMeta.getIdColumns()) {
+            if (!columns.contains(id)) {
+                columns.add(id);
+                descending.add(Boolean.FALSE);
+                if (orderBy.length() > 0) {
+                    orderBy.append(", ");
+                }
+                orderBy.append(id.getQualifiedName());
+            }
+        }
+
+        final StringBuilder clause = new StringBuilder();
+        final List<Object> args = new ArrayList<Object>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                clause.append(" OR ");
+            }
+            clause.append("(");
+            for (int j = 0; j <= i; j++) {
+                final ColumnMeta column = columns.get(j);
+                final Object value = getFieldValue(column, mAfter);
+                if (value == null) {
+                    throw new IllegalArgumentException(
+                            "Cannot use null for the keyset pagination: " + column.getFieldName());
+                }
+                if (j > 0) {
+                    clause.append(" AND ");
+                }
+                clause.append(column.getQualifiedName());
+                if (j < i) {
+                    clause.append(" = ?");
+                } else if (descending.get(j).booleanValue()) {
+                    clause.append(" < ?");
+                } else {
+                    clause.append(" > ?");
+                }
+                args.add(value);
+            }
+            clause.append(")");
+        }
+        mKeysetClause = clause.toString();
+        mKeysetArgs = args.toArray();
+        mKeysetOrderByClause = orderBy.toString();
     }
 
     /**
-     * Sets the field value by the database cursor.
+     * Sets the field values by the database cursor.<br>
+     * The generated row mapper is used if it exists. The snapshot of the
+     * values is set if the entity is {@link Trackable}.
      * 
-     * @param field the field to access
+     * @param meta mapping information of the entity
      * @param entity the entity object to access
      * @param cursor the opened cursor
-     * @param initCusorPos the position(index) of the cursor
-     * @return the position(index) of the cursor after getting the value
-     * @throws IllegalAccessException if this field is not accessible
-     */
-    private int setFieldValuesByCursor(final Field field, final Object entity, final Cursor cursor,
-            final int initCusorPos) throws IllegalAccessException {
-        int cursorPos = initCusorPos;
-        final Class<?> type = field.getType();
-        if (type.equals(double.class)) {
-            field.setDouble(entity, cursor.getDouble(cursorPos++));
-        } else if (type.equals(float.class)) {
-            field.setFloat(entity, cursor.getFloat(cursorPos++));
-        } else if (type.equals(int.class)) {
-            field.setInt(entity, cursor.getInt(cursorPos++));
-        } else if (type.equals(long.class)) {
-            field.setLong(entity, cursor.getLong(cursorPos++));
-        } else if (type.equals(String.class)) {
-            field.set(entity, cursor.getString(cursorPos++));
-        } else if (type.equals(byte[].class)) {
-            field.set(entity, cursor.getBlob(cursorPos++));
-        } else if (type.equals(short.class)) {
-            field.setShort(entity, cursor.getShort(cursorPos++));
-        }
-        return cursorPos;
+     * @param columnIndexes the cursor indexes for each column
+     * @throws IllegalAccessException if the field is not accessible
+     */
+    @SuppressWarnings("unchecked")
+    private static void setFieldValuesByCursor(final EntityMeta meta, final Object entity,
+            final Cursor cursor, final int[] columnIndexes) throws IllegalAccessException {
+        final RowMapper<Object> mapper = (RowMapper<Object>) meta.getRowMapper();
+        if (mapper != null) {
+            mapper.map(cursor, columnIndexes, entity);
+        } else {
+            final ColumnMeta[] columns = meta.getColumns();
+            for (int i = 0; i < columns.length; i++) {
+                if (columnIndexes[i] >= 0) {
+                    final ColumnMeta column = columns[i];
+                    column.getCodec().read(cursor, columnIndexes[i], column.getField(), entity);
+                }
+            }
+        }
+        if (entity instanceof Trackable) {
+            ((Trackable) entity).setSnapshot(Snapshot.take(meta, entity, columnIndexes));
+        }
     }
 
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide LRU cache of the entities, keyed by the class and the primary
+ * keys.
+ * <p>
+ * The cache is disabled by default, and is enabled for each class by
+ * {@link #enable(Class, int)}. The entities retrieved by
+ * {@link DatabaseManager#executeQuery()} are cached, and the query selecting
+ * an entity by {@link DatabaseManager#whereId()} or
+ * {@code DatabaseManager.findById()} returns the cached entity without
+ * accessing the database. The entity is removed from the cache when
+ * it is inserted, updated or deleted by {@link DatabaseManager}. Call
+ * {@link #clear(Class)} after modifying the table in other ways.
+ * <p>
+ * Only the column fields are cached, and the cache returns a copy of them,
+ * so modifying the returned entity does not affect the cache. The values of
+ * {@code byte[]} and {@code Date} fields are also copied, but the other
+ * mutable objects of the fields mapped by a custom {@link ColumnCodec} are
+ * shared with the cache, and must not be modified in place.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class EntityCache {
+    /** Version returned for the class which is not cached. */
+    static final long NOT_CACHED = -1;
+
+    /** Initial capacity of the map of a region. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Regions of the cached classes. */
+    private static final Map<Class<?>, Region> REGIONS = new ConcurrentHashMap<Class<?>, Region>();
+
+    /**
+     * Cached entities of a class.
+     */
+    private static final class Region {
+        /** Mapping information of the cached class. */
+        private final EntityMeta mMeta;
+
+        /** Maximum number of the cached entities. */
+        private final int mMaxSize;
+
+        /** Cached entities in access order. Guarded by this region. */
+        private final LinkedHashMap<List<String>, Object> mEntities;
+
+        /** Version incremented when the entities are invalidated. */
+        private long mVersion;
+
+        /** Number of the cache hits. */
+        private long mHitCount;
+
+        /** Number of the cache misses. */
+        private long mMissCount;
+
+        /**
+         * Creates a region.
+         * 
+         * @param meta mapping information of the cached class
+         * @param maxSize maximum number of the cached entities
+         */
+        Region(final EntityMeta meta, final int maxSize) {
+            mMeta = meta;
+            mMaxSize = maxSize;
+            mEntities = new LinkedHashMap<List<String>, Object>(INITIAL_CAPACITY, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<List<String>, Object> eldest) {
+                    return size() > mMaxSize;
+                }
+            };
+        }
+    }
+
+    /**
+     * Creates the cache.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private EntityCache() {
+    }
+
+    /**
+     * Enables the cache of the class.<br>
+     * The cached entities of the class are discarded.
+     * 
+     * @param entityClass class of the entity
+     * @param maxSize maximum number of the cached entities of the class
+     */
+    public static void enable(final Class<?> entityClass, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        final Region old = REGIONS.put(entityClass,
+                new Region(EntityMeta.of(entityClass), maxSize));
+        if (old != null) {
+            invalidateAll(old);
+        }
+    }
+
+    /**
+     * Disables the cache of the class, and discards the cached entities.
+     * 
+     * @param entityClass class of the entity
+     */
+    public static void disable(final Class<?> entityClass) {
+        final Region old = REGIONS.remove(entityClass);
+        if (old != null) {
+            invalidateAll(old);
+        }
+    }
+
+    /**
+     * Discards the cached entities of the class.
+     * 
+     * @param entityClass class of the entity
+     */
+    public static void clear(final Class<?> entityClass) {
+        final Region region = REGIONS.get(entityClass);
+        if (region != null) {
+            invalidateAll(region);
+        }
+    }
+
+    /**
+     * Discards all the cached entities.
+     */
+    public static void clear() {
+        for (Region region : REGIONS.values()) {
+            invalidateAll(region);
+        }
+    }
+
+    /**
+     * Discards the least recently used half of the cached entities of each
+     * class.<br>
+     * Call this when the memory is low, for example from
+     * {@code ComponentCallbacks#onLowMemory()}.
+     */
+    public static void trimMemory() {
+        for (Region region : REGIONS.values()) {
+            synchronized (region) {
+                int count = region.mEntities.size() / 2;
+                final Iterator<Object> it = region.mEntities.values().iterator();
+                while (count > 0 && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                    count--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the cache of the class is enabled.
+     * 
+     * @param entityClass class of the entity
+     * @return true if the cache is enabled
+     */
+    public static boolean isEnabled(final Class<?> entityClass) {
+        return REGIONS.containsKey(entityClass);
+    }
+
+    /**
+     * Returns the number of the cached entities of the class.
+     * 
+     * @param entityClass class of the entity
+     * @return number of the cached entities
+     */
+    public static int size(final Class<?> entityClass) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return 0;
+        }
+        synchronized (region) {
+            return region.mEntities.size();
+        }
+    }
+
+    /**
+     * Returns the number of the cache hits of the class.
+     * 
+     * @param entityClass class of the entity
+     * @return number of the cache hits
+     */
+    public static long getHitCount(final Class<?> entityClass) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return 0;
+        }
+        synchronized (region) {
+            return region.mHitCount;
+        }
+    }
+
+    /**
+     * Returns the number of the cache misses of the class.
+     * 
+     * @param entityClass class of the entity
+     * @return number of the cache misses
+     */
+    public static long getMissCount(final Class<?> entityClass) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return 0;
+        }
+        synchronized (region) {
+            return region.mMissCount;
+        }
+    }
+
+    /**
+     * Returns the copy of the cached entity, and counts the hit or the miss.
+     * 
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys
+     * @return copy of the cached entity, or {@code null} if it is not cached
+     */
+    static Object get(final Class<?> entityClass, final List<String> ids) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return null;
+        }
+        final Object entity;
+        synchronized (region) {
+            entity = region.mEntities.get(ids);
+            if (entity == null) {
+                region.mMissCount++;
+            } else {
+                region.mHitCount++;
+            }
+        }
+        if (entity == null) {
+            return null;
+        }
+        return copy(region.mMeta, entity);
+    }
+
+    /**
+     * Returns the current version of the cached entities of the class.<br>
+     * Pass it to {@link #put(Class, List, Object, long)} to avoid caching the
+     * entity retrieved before it is invalidated.
+     * 
+     * @param entityClass class of the entity
+     * @return version, or {@link #NOT_CACHED} if the class is not cached
+     */
+    static long getVersion(final Class<?> entityClass) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return NOT_CACHED;
+        }
+        synchronized (region) {
+            return region.mVersion;
+        }
+    }
+
+    /**
+     * Caches the copy of the entity.<br>
+     * The entity is not cached if the entities of the class are invalidated
+     * after the version is taken.
+     * 
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys
+     * @param entity entity retrieved from the database
+     * @param version version taken before the entity is retrieved
+     */
+    static void put(final Class<?> entityClass, final List<String> ids, final Object entity,
+            final long version) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return;
+        }
+        final Object copy = copy(region.mMeta, entity);
+        if (copy == null) {
+            return;
+        }
+        synchronized (region) {
+            if (region.mVersion == version) {
+                region.mEntities.put(ids, copy);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached entity.
+     * 
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys
+     */
+    static void invalidate(final Class<?> entityClass, final List<String> ids) {
+        final Region region = REGIONS.get(entityClass);
+        if (region == null) {
+            return;
+        }
+        synchronized (region) {
+            region.mVersion++;
+            region.mEntities.remove(ids);
+        }
+    }
+
+    /**
+     * Removes all the cached entities of the region.
+     * 
+     * @param region region to clear
+     */
+    private static void invalidateAll(final Region region) {
+        synchronized (region) {
+            region.mVersion++;
+            region.mEntities.clear();
+        }
+    }
+
+    /**
+     * Copies the value of a field if it is a mutable object.
+     * 
+     * @param value value of the field
+     * @return copy of {@code byte[]} or {@code Date}, or the value itself
+     */
+    private static Object copyValue(final Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * Copies the column fields of the entity.
+     * 
+     * @param meta mapping information of the entity
+     * @param entity entity to copy
+     * @return copy, or {@code null} if the entity cannot be copied
+     */
+    private static Object copy(final EntityMeta meta, final Object entity) {
+        try {
+            final RowMapper<?> mapper = meta.getRowMapper();
+            final Object copy;
+            if (mapper != null) {
+                copy = mapper.newInstance();
+            } else {
+                copy = meta.getEntityClass().newInstance();
+            }
+            for (ColumnMeta column : meta.getColumns()) {
+                final Field field = column.getField();
+                field.set(copy, copyValue(field.get(entity)));
+            }
+            if (copy instanceof Trackable) {
+                ((Trackable) copy).setSnapshot(Snapshot.take(meta, copy,
+                        meta.getAllColumnIndexes()));
+            }
+            return copy;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
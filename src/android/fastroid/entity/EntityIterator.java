@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.io.Closeable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Iterates the result of a query, retrieving the entities from the cursor on
+ * demand.
+ * <p>
+ * Only the current row is mapped to an entity, so the memory does not grow
+ * with the size of the result. The cursor and the connection are released
+ * when the iteration reaches the end, or when {@link #close()} is called.
+ * {@link #close()} must be called if the iteration is stopped before the
+ * end. The resources of an iterator abandoned without closing are not
+ * released until it is garbage collected and another operation of
+ * {@link ConnectionManager} runs afterwards, and the database cannot be
+ * closed by the idle timeout until then.
+ * <p>
+ * This can be iterated only once.
+ * 
+ * @param <T> type of the entity
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class EntityIterator<T> implements Iterator<T>, Iterable<T>, Closeable {
+    /** Queue of the guards of the abandoned iterators. */
+    private static final ReferenceQueue<EntityIterator<?>> ABANDONED =
+            new ReferenceQueue<EntityIterator<?>>();
+
+    /** Guards of the iterators not closed yet. Guarded by itself. */
+    private static final Set<Guard> OPEN_GUARDS = new HashSet<Guard>();
+
+    /** Manager which executed the query. */
+    private final DatabaseManager mManager;
+
+    /** Class of the entity. */
+    private final Class<T> mTargetClass;
+
+    /** Cursor indexes of the columns. */
+    private final int[][] mColumnIndexes;
+
+    /** Cursor of the result, or {@code null} if the result is empty. */
+    private final Cursor mCursor;
+
+    /** Guard which releases the resources. */
+    private final Guard mGuard;
+
+    /** True if the cursor is moved to the row not retrieved yet. */
+    private boolean mNextReady;
+
+    /** True if this iterator is closed. */
+    private boolean mClosed;
+
+    /**
+     * Releases the cursor and the connection of an iterator even if the
+     * iterator is abandoned.
+     */
+    private static final class Guard extends WeakReference<EntityIterator<?>> {
+        /** Cursor to close. */
+        private final Cursor mCursor;
+
+        /** Helper of the connection. */
+        private final SQLiteOpenHelper mHelper;
+
+        /** Connection to release. */
+        private final SQLiteDatabase mDb;
+
+        /**
+         * Creates a guard.
+         * 
+         * @param iterator iterator to guard
+         * @param cursor cursor to close
+         * @param helper helper of the connection
+         * @param db connection to release
+         */
+        Guard(final EntityIterator<?> iterator, final Cursor cursor,
+                final SQLiteOpenHelper helper, final SQLiteDatabase db) {
+            super(iterator, ABANDONED);
+            mCursor = cursor;
+            mHelper = helper;
+            mDb = db;
+        }
+
+        /**
+         * Closes the cursor and releases the connection only once.
+         */
+        void release() {
+            synchronized (OPEN_GUARDS) {
+                if (!OPEN_GUARDS.remove(this)) {
+                    return;
+                }
+            }
+            try {
+                mCursor.close();
+            } finally {
+                ConnectionManager.release(mHelper, mDb);
+            }
+        }
+    }
+
+    /**
+     * Creates an iterator.<br>
+     * The cursor and the connection are owned by the iterator.
+     * 
+     * @param manager manager which executed the query
+     * @param targetClass class of the entity
+     * @param columnIndexes cursor indexes of the columns
+     * @param helper helper of the connection
+     * @param db connection, or {@code null} if the result is empty
+     * @param cursor cursor of the result, or {@code null} if the result is
+     *            empty
+     */
+    EntityIterator(final DatabaseManager manager, final Class<T> targetClass,
+            final int[][] columnIndexes, final SQLiteOpenHelper helper,
+            final SQLiteDatabase db, final Cursor cursor) {
+        mManager = manager;
+        mTargetClass = targetClass;
+        mColumnIndexes = columnIndexes;
+        mCursor = cursor;
+        if (cursor == null) {
+            mGuard = null;
+            mClosed = true;
+        } else {
+            mGuard = new Guard(this, cursor, helper, db);
+            synchronized (OPEN_GUARDS) {
+                OPEN_GUARDS.add(mGuard);
+            }
+        }
+    }
+
+    /**
+     * Returns this iterator itself to use in the for-each loop.
+     * 
+     * @return this iterator
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mClosed) {
+            return false;
+        }
+        if (!mNextReady) {
+            if (mCursor.moveToNext()) {
+                mNextReady = true;
+            } else {
+                close();
+            }
+        }
+        return mNextReady;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mNextReady = false;
+        try {
+            return mManager.retrieveFromCursor(mCursor, mTargetClass, mColumnIndexes);
+        } catch (Exception e) {
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the cursor and releases the connection.<br>
+     * This does nothing if this iterator is already closed.
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mNextReady = false;
+        mGuard.clear();
+        mGuard.release();
+    }
+
+    /**
+     * Releases the resources of the iterators garbage collected without
+     * closing.<br>
+     * This is called by {@link ConnectionManager} whenever a connection is
+     * acquired or released, and must not be called with the lock of a
+     * connection.
+     */
+    static void releaseAbandoned() {
+        Reference<? extends EntityIterator<?>> reference = ABANDONED.poll();
+        while (reference != null) {
+            ((Guard) reference).release();
+            reference = ABANDONED.poll();
+        }
+    }
+}
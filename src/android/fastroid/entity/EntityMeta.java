@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.fastroid.entity.annotation.Column;
+import android.fastroid.entity.annotation.Id;
+import android.fastroid.entity.annotation.JoinColumn;
+import android.fastroid.entity.annotation.ManyToOne;
+import android.fastroid.entity.annotation.OneToMany;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapping information of an entity class.
+ * <p>
+ * The reflection on the entity class, such as collecting the fields, sorting
+ * them by {@link FieldOrderComparator} and converting the names to the
+ * database format, is done only once per class. The instances are immutable
+ * and shared between threads.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class EntityMeta {
+    /** Cache of the mapping information by entity class. */
+    private static final Map<Class<?>, EntityMeta> CACHE =
+            new ConcurrentHashMap<Class<?>, EntityMeta>();
+
+    /** Entity class. */
+    private final Class<?> mEntityClass;
+
+    /** Table name of the entity. */
+    private final String mTableName;
+
+    /** Columns ordered by {@link FieldOrderComparator}. */
+    private final ColumnMeta[] mColumns;
+
+    /** Primary key columns. */
+    private final ColumnMeta[] mIdColumns;
+
+    /** Columns by column name. */
+    private final Map<String, ColumnMeta> mColumnsByName;
+
+    /** Relation fields by field name. */
+    private final Map<String, RelationMeta> mRelations;
+
+    /** Comma separated list of the qualified column names. */
+    private final String mQualifiedColumns;
+
+    /** Columns to insert; all the columns except auto-increment columns. */
+    private final ColumnMeta[] mInsertColumns;
+
+    /** INSERT statement parameterized by the insert columns. */
+    private final String mInsertSql;
+
+    /** INSERT OR REPLACE statement parameterized by all the columns. */
+    private final String mReplaceSql;
+
+    /** INSERT OR IGNORE statement parameterized by all the columns. */
+    private final String mInsertOrIgnoreSql;
+
+    /** INSERT statement parameterized by all the columns. */
+    private final String mInsertAllSql;
+
+    /**
+     * SELECT statement parameterized by the primary keys, or {@code null} if
+     * the entity has no primary key.
+     */
+    private final String mFindByIdSql;
+
+    /** Cursor indexes of the columns when all the columns are selected. */
+    private final int[] mAllColumnIndexes;
+
+    /** Generated row mapper, or {@code null} if it does not exist. */
+    private final RowMapper<?> mRowMapper;
+
+    /**
+     * Creates the mapping information by reflection.
+     * 
+     * @param entityClass entity class
+     */
+    private EntityMeta(final Class<?> entityClass) {
+        mEntityClass = entityClass;
+        mTableName = toDbName(entityClass.getSimpleName());
+
+        final Field[] fields = entityClass.getFields();
+        Arrays.sort(fields, new FieldOrderComparator());
+        final List<ColumnMeta> columns = new ArrayList<ColumnMeta>();
+        final List<ColumnMeta> idColumns = new ArrayList<ColumnMeta>();
+        final List<ColumnMeta> insertColumns = new ArrayList<ColumnMeta>();
+        final Map<String, ColumnMeta> columnsByName = new HashMap<String, ColumnMeta>();
+        final Map<String, RelationMeta> relations = new HashMap<String, RelationMeta>();
+        final StringBuilder qualifiedColumns = new StringBuilder();
+        for (Field field : fields) {
+            if (field.getAnnotation(Column.class) != null) {
+                final Id id = field.getAnnotation(Id.class);
+                final ColumnMeta column = new ColumnMeta(field, mTableName, id != null,
+                        id != null && id.autoIncrement());
+                columns.add(column);
+                columnsByName.put(column.getColumnName(), column);
+                if (column.isId()) {
+                    idColumns.add(column);
+                }
+                if (!column.isAutoIncrement()) {
+                    insertColumns.add(column);
+                }
+                if (qualifiedColumns.length() > 0) {
+                    qualifiedColumns.append(", ");
+                }
+                qualifiedColumns.append(column.getQualifiedName());
+            } else {
+                final RelationMeta relation = createRelation(field);
+                if (relation != null) {
+                    relations.put(field.getName(), relation);
+                }
+            }
+        }
+        mColumns = columns.toArray(new ColumnMeta[columns.size()]);
+        mIdColumns = idColumns.toArray(new ColumnMeta[idColumns.size()]);
+        mColumnsByName = Collections.unmodifiableMap(columnsByName);
+        mRelations = Collections.unmodifiableMap(relations);
+        mQualifiedColumns = qualifiedColumns.toString();
+        mInsertColumns = insertColumns.toArray(new ColumnMeta[insertColumns.size()]);
+        mInsertSql = createInsertSql("INSERT", mInsertColumns);
+        mReplaceSql = createInsertSql("INSERT OR REPLACE", mColumns);
+        mInsertOrIgnoreSql = createInsertSql("INSERT OR IGNORE", mColumns);
+        mInsertAllSql = createInsertSql("INSERT", mColumns);
+        mFindByIdSql = createFindByIdSql();
+        mAllColumnIndexes = new int[mColumns.length];
+        for (int i = 0; i < mAllColumnIndexes.length; i++) {
+            mAllColumnIndexes[i] = i;
+        }
+        mRowMapper = loadRowMapper();
+    }
+
+    /**
+     * Returns the mapping information of the entity class.<br>
+     * The information is created at the first call for each class.
+     * 
+     * @param entityClass entity class
+     * @return mapping information
+     */
+    static EntityMeta of(final Class<?> entityClass) {
+        EntityMeta meta = CACHE.get(entityClass);
+        if (meta == null) {
+            // Creating twice by racing threads is harmless
+            meta = new EntityMeta(entityClass);
+            CACHE.put(entityClass, meta);
+        }
+        return meta;
+    }
+
+    /**
+     * Convert the name(class or field name in camel format) to database name
+     * format; All characters are upper-case and are delimited by
+     * underscore('_').
+     * <p>
+     * The argument name is assumed to be the following format.
+     * 
+     * <pre>
+     * {@code ([a-zA-Z][a-z0-9_\\$]*)([A-Z][a-z0-9_\\$]*)* }
+     * </pre>
+     * 
+     * @param name name to convert
+     * @return converted name
+     */
+    static String toDbName(final String name) {
+        final StringBuilder dbName = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            // Assume upper case characters as the delimiters of the words.
+            if ('A' <= c && c <= 'Z') {
+                dbName.append('_');
+            }
+            dbName.append(c);
+        }
+        // Removes the underscores if this name is the class name
+        if (dbName.length() > 0 && dbName.charAt(0) == '_') {
+            dbName.deleteCharAt(0);
+        }
+        return dbName.toString().toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the entity class.
+     * 
+     * @return entity class
+     */
+    Class<?> getEntityClass() {
+        return mEntityClass;
+    }
+
+    /**
+     * Returns the table name of the entity.
+     * 
+     * @return table name
+     */
+    String getTableName() {
+        return mTableName;
+    }
+
+    /**
+     * Returns the columns of the entity in the order of the cursor columns.<br>
+     * The returned array must not be modified.
+     * 
+     * @return columns
+     */
+    ColumnMeta[] getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Returns the primary key columns of the entity.<br>
+     * The returned array must not be modified.
+     * 
+     * @return primary key columns
+     */
+    ColumnMeta[] getIdColumns() {
+        return mIdColumns;
+    }
+
+    /**
+     * Returns the column by its name.
+     * 
+     * @param columnName column name, which is case-insensitive
+     * @return column, or {@code null} if the entity does not have the column
+     */
+    ColumnMeta getColumn(final String columnName) {
+        return mColumnsByName.get(columnName.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the relation of the field.
+     * 
+     * @param fieldName name of the relation field
+     * @return relation, or {@code null} if the field is not a relation
+     */
+    RelationMeta getRelation(final String fieldName) {
+        return mRelations.get(fieldName);
+    }
+
+    /**
+     * Returns the comma separated list of the qualified column names.
+     * 
+     * @return column list for SELECT clause
+     */
+    String getQualifiedColumns() {
+        return mQualifiedColumns;
+    }
+
+    /**
+     * Returns the columns to insert, which are all the columns except
+     * auto-increment columns.<br>
+     * The returned array must not be modified.
+     * 
+     * @return columns to insert
+     */
+    ColumnMeta[] getInsertColumns() {
+        return mInsertColumns;
+    }
+
+    /**
+     * Returns the INSERT statement parameterized by the insert columns in the
+     * order of {@link #getInsertColumns()}.
+     * 
+     * @return INSERT statement
+     */
+    String getInsertSql() {
+        return mInsertSql;
+    }
+
+    /**
+     * Returns the statement to insert the object with its primary keys, which
+     * resolves the conflict by the strategy.<br>
+     * The statement is parameterized by all the columns in the order of
+     * {@link #getColumns()}. For {@link ConflictStrategy#UPDATE_NON_NULL},
+     * this is the plain INSERT executed when no row is updated.
+     * 
+     * @param strategy conflict strategy
+     * @return INSERT statement
+     */
+    String getUpsertSql(final ConflictStrategy strategy) {
+        switch (strategy) {
+            case REPLACE:
+                return mReplaceSql;
+            case IGNORE:
+                return mInsertOrIgnoreSql;
+            default:
+                return mInsertAllSql;
+        }
+    }
+
+    /**
+     * Returns the SELECT statement of all the columns parameterized by the
+     * primary keys in the order of {@link #getIdColumns()}.
+     * 
+     * @return SELECT statement, or {@code null} if the entity has no primary
+     *         key
+     */
+    String getFindByIdSql() {
+        return mFindByIdSql;
+    }
+
+    /**
+     * Returns the cursor indexes of the columns when all the columns are
+     * selected in the order of {@link #getColumns()}.<br>
+     * The returned array must not be modified.
+     * 
+     * @return cursor indexes
+     */
+    int[] getAllColumnIndexes() {
+        return mAllColumnIndexes;
+    }
+
+    /**
+     * Returns the generated row mapper of the entity.
+     * 
+     * @return row mapper, or {@code null} if it does not exist
+     */
+    RowMapper<?> getRowMapper() {
+        return mRowMapper;
+    }
+
+    /**
+     * Creates the SELECT statement parameterized by the primary keys.
+     * 
+     * @return SELECT statement, or {@code null} if the entity has no primary
+     *         key
+     */
+    private String createFindByIdSql() {
+        if (mIdColumns.length == 0) {
+            return null;
+        }
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(mQualifiedColumns).append(" FROM ").append(mTableName).append(" WHERE ");
+        for (int i = 0; i < mIdColumns.length; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append(mIdColumns[i].getQualifiedName()).append(" = ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Creates the INSERT statement parameterized by the columns.
+     * 
+     * @param verb INSERT verb including the conflict clause
+     * @param insertColumns columns to insert
+     * @return INSERT statement
+     */
+    private String createInsertSql(final String verb, final ColumnMeta[] insertColumns) {
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder values = new StringBuilder();
+        for (ColumnMeta column : insertColumns) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append(column.getColumnName());
+            values.append("?");
+        }
+        return verb + " INTO " + mTableName + " (" + columns + ") VALUES (" + values + ")";
+    }
+
+    /**
+     * Loads the row mapper generated for the entity class.<br>
+     * The mapper is ignored if its column order differs from this
+     * information, for example when the entity has been modified after the
+     * generation, or if any column uses a custom codec.
+     * 
+     * @return row mapper, or {@code null} if it does not exist
+     */
+    private RowMapper<?> loadRowMapper() {
+        final RowMapper<?> mapper;
+        try {
+            mapper = (RowMapper<?>) Class.forName(mEntityClass.getName() + RowMapper.SUFFIX,
+                    true, mEntityClass.getClassLoader()).newInstance();
+        } catch (Exception e) {
+            return null;
+        }
+        final String[] columnNames = mapper.getColumnNames();
+        if (columnNames.length != mColumns.length) {
+            return null;
+        }
+        for (int i = 0; i < mColumns.length; i++) {
+            if (!mColumns[i].getColumnName().equals(columnNames[i])) {
+                return null;
+            }
+            // The mapper does not know the custom codecs
+            if (!ColumnCodecs.isBuiltIn(mColumns[i].getCodec())) {
+                return null;
+            }
+        }
+        return mapper;
+    }
+
+    /**
+     * Creates the relation information of the field.
+     * 
+     * @param field field which may be a relation
+     * @return relation, or {@code null} if the field is not a valid relation
+     */
+    private static RelationMeta createRelation(final Field field) {
+        final ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+        final OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        try {
+            if (manyToOne != null) {
+                final JoinColumn joinColumn = field.getAnnotation(JoinColumn.class);
+                if (joinColumn == null) {
+                    return null;
+                }
+                return new RelationMeta(field, field.getType(),
+                        toDbName(joinColumn.name()), false);
+            } else if (oneToMany != null) {
+                // Must be a parameterized List
+                final ParameterizedType parameterizedType = (ParameterizedType) field
+                        .getGenericType();
+                final Class<?> joinClass = (Class<?>) parameterizedType
+                        .getActualTypeArguments()[0];
+                final JoinColumn joinColumn = joinClass.getField(oneToMany.mappedBy())
+                        .getAnnotation(JoinColumn.class);
+                if (joinColumn == null) {
+                    return null;
+                }
+                return new RelationMeta(field, joinClass, toDbName(joinColumn.name()), true);
+            }
+        } catch (Exception e) {
+            // Invalid relation definition is treated as a normal field
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Map of the entities retrieved in a query or a transaction, keyed by the
+ * class and the primary keys.
+ * <p>
+ * The rows of the same primary keys resolve to the same instance, so the
+ * entity referred from many rows is created and mapped only once.
+ * <p>
+ * This is not thread-safe. A map of a transaction is bound to the thread
+ * which executes the transaction.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class IdentityMap {
+    /** Map of the transaction executed in the current thread. */
+    private static final ThreadLocal<IdentityMap> TRANSACTION = new ThreadLocal<IdentityMap>();
+
+    /** Helper of the database which the entities are retrieved from. */
+    private final SQLiteOpenHelper mHelper;
+
+    /** Entities keyed by the class and the primary keys. */
+    private final Map<List<Object>, Object> mEntities;
+
+    /** Nesting level of the transactions. */
+    private int mDepth;
+
+    /**
+     * Creates an empty map.
+     * 
+     * @param helper helper of the database which the entities are retrieved
+     *            from
+     */
+    private IdentityMap(final SQLiteOpenHelper helper) {
+        mHelper = helper;
+        mEntities = new HashMap<List<Object>, Object>();
+    }
+
+    /**
+     * Starts the scope of the transaction in the current thread.<br>
+     * The nested transactions share the map of the outermost transaction.
+     * 
+     * @param helper helper of the database of the transaction
+     */
+    static void beginTransaction(final SQLiteOpenHelper helper) {
+        IdentityMap map = TRANSACTION.get();
+        if (map == null) {
+            map = new IdentityMap(helper);
+            TRANSACTION.set(map);
+        }
+        map.mDepth++;
+    }
+
+    /**
+     * Ends the scope of the transaction in the current thread.<br>
+     * The map is discarded when the outermost transaction ends.
+     */
+    static void endTransaction() {
+        final IdentityMap map = TRANSACTION.get();
+        if (map != null) {
+            map.mDepth--;
+            if (map.mDepth == 0) {
+                TRANSACTION.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the map for a query.<br>
+     * The map of the transaction is returned if the query is executed in the
+     * transaction of the same helper, otherwise a new map is returned.
+     * 
+     * @param helper helper of the database of the query
+     * @return map
+     */
+    static IdentityMap forQuery(final SQLiteOpenHelper helper) {
+        final IdentityMap map = TRANSACTION.get();
+        if (map != null && map.mHelper == helper) {
+            return map;
+        }
+        return new IdentityMap(helper);
+    }
+
+    /**
+     * Returns the entity of the primary keys.
+     * 
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys
+     * @return entity, or {@code null} if it is not retrieved yet
+     */
+    Object get(final Class<?> entityClass, final List<String> ids) {
+        return mEntities.get(Arrays.<Object> asList(entityClass, ids));
+    }
+
+    /**
+     * Stores the entity of the primary keys.
+     * 
+     * @param entityClass class of the entity
+     * @param ids values of the primary keys
+     * @param entity entity retrieved
+     */
+    void put(final Class<?> entityClass, final List<String> ids, final Object entity) {
+        mEntities.put(Arrays.<Object> asList(entityClass, ids), entity);
+    }
+}
@@ -63,6 +63,9 @@ public final class Join {
     /** Arugments of the additional condition clause. */
     private String[] mAdditionalCondArgs;
 
+    /** Field names to select, or {@code null} to select all the columns. */
+    private String[] mSelectedFieldNames;
+
     /**
      * Returns the type of this join.
      * 
@@ -190,4 +193,23 @@ public final class Join {
         mAdditionalCondArgs = additionalCondArgs;
     }
 
+    /**
+     * Returns the field names of the joined table to select.
+     * 
+     * @return field names, or {@code null} to select all the columns
+     */
+    public String[] getSelectedFieldNames() {
+        return mSelectedFieldNames;
+    }
+
+    /**
+     * Set the field names of the joined table to select.
+     * 
+     * @param selectedFieldNames field names, or {@code null} to select all the
+     *            columns
+     */
+    public void setSelectedFieldNames(final String[] selectedFieldNames) {
+        mSelectedFieldNames = selectedFieldNames;
+    }
+
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the query results, keyed by the SQL text and the arguments.
+ * <p>
+ * Only the results of the queries with {@link DatabaseManager#cacheResult()}
+ * are cached. Each result is tagged with the tables of the query, including
+ * the joined tables, and is removed when any of the tables is written by
+ * {@link DatabaseManager}. Call {@link #invalidate(String)} after writing the
+ * table in other ways.
+ * <p>
+ * The cached entities are shared by all the queries which hit the cache, so
+ * they must not be modified.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class QueryCache {
+    /** Default maximum number of the cached results. */
+    private static final int DEFAULT_MAX_SIZE = 32;
+
+    /** Maximum number of the cached results. */
+    private static volatile int sMaxSize = DEFAULT_MAX_SIZE;
+
+    /** Cached results in access order. Guarded by itself. */
+    private static final Map<QueryKey, CachedResult> CACHE =
+            new LinkedHashMap<QueryKey, CachedResult>(DEFAULT_MAX_SIZE, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<QueryKey, CachedResult> eldest) {
+                    return size() > sMaxSize;
+                }
+            };
+
+    /** Version incremented when any table is written. */
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    /** Number of the cache hits. */
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+
+    /** Number of the cache misses. */
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+    /**
+     * Cached result and its tables.
+     */
+    private static final class CachedResult {
+        /** Tables of the query. */
+        private final String[] mTables;
+
+        /** Entities of the result. */
+        private final List<?> mResult;
+
+        /**
+         * Creates a cached result.
+         * 
+         * @param tables tables of the query
+         * @param result entities of the result
+         */
+        CachedResult(final String[] tables, final List<?> result) {
+            mTables = tables;
+            mResult = result;
+        }
+    }
+
+    /**
+     * Creates the cache.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private QueryCache() {
+    }
+
+    /**
+     * Returns whether the cache is enabled.
+     * 
+     * @return true if the maximum size is positive
+     */
+    static boolean isEnabled() {
+        return sMaxSize > 0;
+    }
+
+    /**
+     * Returns the current version of the tables.<br>
+     * Pass it to {@link #put(QueryKey, String[], List, long)} to avoid caching
+     * the result retrieved before a table is written.
+     * 
+     * @return version
+     */
+    static long getVersion() {
+        return VERSION.get();
+    }
+
+    /**
+     * Returns the cached result, and counts the hit or the miss.
+     * 
+     * @param key SQL text and arguments of the query
+     * @return unmodifiable cached result, or {@code null} if it is not cached
+     */
+    static List<?> get(final QueryKey key) {
+        final CachedResult entry;
+        synchronized (CACHE) {
+            entry = CACHE.get(key);
+        }
+        if (entry == null) {
+            MISS_COUNT.incrementAndGet();
+            return null;
+        }
+        HIT_COUNT.incrementAndGet();
+        return entry.mResult;
+    }
+
+    /**
+     * Caches the result.<br>
+     * The result is not cached if any table is written after the version is
+     * taken.
+     * 
+     * @param key SQL text and arguments of the query
+     * @param tables tables of the query
+     * @param result entities of the result
+     * @param version version taken before the query is executed
+     */
+    static void put(final QueryKey key, final String[] tables, final List<?> result,
+            final long version) {
+        final CachedResult entry = new CachedResult(tables,
+                Collections.unmodifiableList(result));
+        synchronized (CACHE) {
+            if (VERSION.get() == version) {
+                CACHE.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached results of the queries which use the table.
+     * 
+     * @param tableName name of the table written
+     */
+    public static void invalidate(final String tableName) {
+        synchronized (CACHE) {
+            VERSION.incrementAndGet();
+            for (Iterator<CachedResult> it = CACHE.values().iterator(); it.hasNext();) {
+                for (String table : it.next().mTables) {
+                    if (table.equalsIgnoreCase(tableName)) {
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of the cached results.<br>
+     * Set {@code 0} to disable the cache.
+     * 
+     * @param maxSize maximum number of the cached results
+     */
+    public static void setMaxSize(final int maxSize) {
+        synchronized (CACHE) {
+            sMaxSize = maxSize;
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Removes all the cached results, and resets the counters.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            VERSION.incrementAndGet();
+            CACHE.clear();
+        }
+        HIT_COUNT.set(0);
+        MISS_COUNT.set(0);
+    }
+
+    /**
+     * Returns the number of the cache hits.
+     * 
+     * @return number of the cache hits
+     */
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    /**
+     * Returns the number of the cache misses.
+     * 
+     * @return number of the cache misses
+     */
+    public static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+/**
+ * Receives the result of the asynchronous operation of
+ * {@link DatabaseManager}.
+ * <p>
+ * The methods are called in the thread of the {@code Handler} given to the
+ * operation, or in the worker thread if no handler is given. Neither method
+ * is called if the operation is cancelled or superseded.
+ * 
+ * @param <T> type of the result
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public interface QueryCallback<T> {
+    /**
+     * Called when the operation succeeds.
+     * 
+     * @param result result of the operation
+     */
+    void onResult(T result);
+
+    /**
+     * Called when the operation fails.
+     * 
+     * @param e cause of the failure
+     */
+    void onError(Exception e);
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+/**
+ * Timings and statistics of a database operation of {@link DatabaseManager}.
+ * <p>
+ * The SQL text identifies the shape of the operation, because the values are
+ * passed as the arguments.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class QueryEvent {
+    /**
+     * Types of the database operations.
+     */
+    public enum Type {
+        /** SELECT operation, including the aggregates. */
+        SELECT,
+        /** INSERT operation. */
+        INSERT,
+        /** UPDATE operation. */
+        UPDATE,
+        /** DELETE operation. */
+        DELETE;
+    }
+
+    /** Type of the operation. */
+    private final Type mType;
+
+    /** Class of the target entity. */
+    private final Class<?> mEntityClass;
+
+    /** SQL text of the operation. */
+    private final String mSql;
+
+    /** Time to build the SQL text and the arguments in nanoseconds. */
+    private long mBuildNanos;
+
+    /** Time to execute the statement in SQLite in nanoseconds. */
+    private long mExecuteNanos;
+
+    /** Time to iterate the cursor and map the rows in nanoseconds. */
+    private long mMappingNanos;
+
+    /** Number of the rows selected or changed. */
+    private long mRowCount;
+
+    /** Total bytes of the BLOB values of the target entities. */
+    private long mBlobBytes;
+
+    /**
+     * Creates an event.
+     * 
+     * @param type type of the operation
+     * @param entityClass class of the target entity
+     * @param sql SQL text of the operation
+     */
+    QueryEvent(final Type type, final Class<?> entityClass, final String sql) {
+        mType = type;
+        mEntityClass = entityClass;
+        mSql = sql;
+    }
+
+    /**
+     * Returns the type of the operation.
+     * 
+     * @return type of the operation
+     */
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * Returns the class of the target entity.
+     * 
+     * @return class of the target entity
+     */
+    public Class<?> getEntityClass() {
+        return mEntityClass;
+    }
+
+    /**
+     * Returns the SQL text, which identifies the shape of the operation.
+     * 
+     * @return SQL text
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * Returns the time to build the SQL text and the arguments.
+     * 
+     * @return time in nanoseconds
+     */
+    public long getBuildNanos() {
+        return mBuildNanos;
+    }
+
+    /**
+     * Returns the time to execute the statement in SQLite. For the SELECT
+     * operation, this includes filling the first cursor window.
+     * 
+     * @return time in nanoseconds
+     */
+    public long getExecuteNanos() {
+        return mExecuteNanos;
+    }
+
+    /**
+     * Returns the time to iterate the cursor and map the rows to the
+     * entities.
+     * 
+     * @return time in nanoseconds
+     */
+    public long getMappingNanos() {
+        return mMappingNanos;
+    }
+
+    /**
+     * Returns the total time of the operation.
+     * 
+     * @return time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return mBuildNanos + mExecuteNanos + mMappingNanos;
+    }
+
+    /**
+     * Returns the number of the rows selected or changed.
+     * 
+     * @return number of the rows
+     */
+    public long getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Returns the total bytes of the BLOB values of the target entities which
+     * are selected or written.
+     * 
+     * @return bytes of the BLOB values
+     */
+    public long getBlobBytes() {
+        return mBlobBytes;
+    }
+
+    /**
+     * Sets the timings of the operation.
+     * 
+     * @param startTime time when the operation started
+     * @param builtTime time when the SQL text and the arguments are built
+     * @param executedTime time when SQLite executed the statement
+     * @param mappedTime time when the rows are mapped
+     */
+    void setTimes(final long startTime, final long builtTime, final long executedTime,
+            final long mappedTime) {
+        mBuildNanos = builtTime - startTime;
+        mExecuteNanos = executedTime - builtTime;
+        mMappingNanos = mappedTime - executedTime;
+    }
+
+    /**
+     * Sets the number of the rows selected or changed.
+     * 
+     * @param rowCount number of the rows
+     */
+    void setRowCount(final long rowCount) {
+        mRowCount = rowCount;
+    }
+
+    /**
+     * Sets the total bytes of the BLOB values.
+     * 
+     * @param blobBytes bytes of the BLOB values
+     */
+    void setBlobBytes(final long blobBytes) {
+        mBlobBytes = blobBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mType + " " + mSql + " build=" + mBuildNanos + "ns execute=" + mExecuteNanos
+                + "ns mapping=" + mMappingNanos + "ns rows=" + mRowCount + " blobBytes="
+                + mBlobBytes;
+    }
+}
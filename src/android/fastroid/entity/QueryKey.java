@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import java.util.Arrays;
+
+/**
+ * Key which identifies the shape of a query.
+ * <p>
+ * Two queries have the same shape if they have the same SQL text, ignoring
+ * the values of the arguments. {@link QueryCache} also uses this to identify
+ * the query with the values of the arguments.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class QueryKey {
+    /** Elements which determine the SQL text. */
+    private final Object[] mParts;
+
+    /** Hash code of the elements. */
+    private final int mHashCode;
+
+    /**
+     * Creates a key.
+     * 
+     * @param parts elements which determine the SQL text
+     */
+    QueryKey(final Object... parts) {
+        mParts = parts;
+        mHashCode = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryKey)) {
+            return false;
+        }
+        final QueryKey other = (QueryKey) o;
+        return mHashCode == other.mHashCode && Arrays.equals(mParts, other.mParts);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+/**
+ * Receives the {@link QueryEvent} of each database operation of
+ * {@link DatabaseManager}.
+ * <p>
+ * Register the listener by
+ * {@link DatabaseManager#addQueryListener(QueryListener)}. The listener is
+ * called in the thread which executes the operation, so the implementations
+ * must be thread-safe and return quickly. The listener is called after the
+ * cursor and the connection of the operation are released, and its
+ * exceptions are logged without failing the operation.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public interface QueryListener {
+    /**
+     * Called when a database operation finishes.
+     * 
+     * @param event timings and statistics of the operation
+     */
+    void onQuery(QueryEvent event);
+}
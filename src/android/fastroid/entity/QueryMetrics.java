@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link QueryListener} which aggregates the events in memory by the SQL
+ * text.
+ * <p>
+ * The aggregation does not lock; the counters are atomic, and the total times
+ * are recorded in the histogram of the powers of two, so the percentiles are
+ * approximated within a factor of two.
+ * 
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * DatabaseManager.addQueryListener(metrics);
+ * ...
+ * for (Map.Entry&lt;String, QueryMetrics.Stats&gt; e : metrics.getStats().entrySet()) {
+ *     Log.d(TAG, e.getKey() + &quot;: p95=&quot; + e.getValue().getPercentileNanos(95));
+ * }
+ * </pre>
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class QueryMetrics implements QueryListener {
+    /** Number of the buckets of the histogram; one for each bit length. */
+    private static final int BUCKETS = 64;
+
+    /** Statistics by the SQL text. */
+    private final ConcurrentMap<String, Stats> mStats = new ConcurrentHashMap<String, Stats>();
+
+    /**
+     * Aggregated statistics of the operations of an SQL text.
+     */
+    public static final class Stats {
+        /** Number of the operations. */
+        private final AtomicLong mCount = new AtomicLong();
+
+        /** Total time to build the SQL. */
+        private final AtomicLong mBuildNanos = new AtomicLong();
+
+        /** Total time to execute the statements. */
+        private final AtomicLong mExecuteNanos = new AtomicLong();
+
+        /** Total time to map the rows. */
+        private final AtomicLong mMappingNanos = new AtomicLong();
+
+        /** Total number of the rows. */
+        private final AtomicLong mRowCount = new AtomicLong();
+
+        /** Total bytes of the BLOB values. */
+        private final AtomicLong mBlobBytes = new AtomicLong();
+
+        /** Counts of the total times by the bit length. */
+        private final AtomicLongArray mHistogram = new AtomicLongArray(BUCKETS);
+
+        /**
+         * Creates the empty statistics.
+         */
+        Stats() {
+        }
+
+        /**
+         * Adds the event.
+         * 
+         * @param event event to add
+         */
+        void add(final QueryEvent event) {
+            mCount.incrementAndGet();
+            mBuildNanos.addAndGet(event.getBuildNanos());
+            mExecuteNanos.addAndGet(event.getExecuteNanos());
+            mMappingNanos.addAndGet(event.getMappingNanos());
+            mRowCount.addAndGet(event.getRowCount());
+            mBlobBytes.addAndGet(event.getBlobBytes());
+            final long total = Math.max(event.getTotalNanos(), 1);
+            mHistogram.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(total),
+                    BUCKETS - 1));
+        }
+
+        /**
+         * Returns the number of the operations.
+         * 
+         * @return number of the operations
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * Returns the total time to build the SQL.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getBuildNanos() {
+            return mBuildNanos.get();
+        }
+
+        /**
+         * Returns the total time to execute the statements.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getExecuteNanos() {
+            return mExecuteNanos.get();
+        }
+
+        /**
+         * Returns the total time to map the rows.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getMappingNanos() {
+            return mMappingNanos.get();
+        }
+
+        /**
+         * Returns the total time of the operations.
+         * 
+         * @return time in nanoseconds
+         */
+        public long getTotalNanos() {
+            return getBuildNanos() + getExecuteNanos() + getMappingNanos();
+        }
+
+        /**
+         * Returns the total number of the rows.
+         * 
+         * @return number of the rows
+         */
+        public long getRowCount() {
+            return mRowCount.get();
+        }
+
+        /**
+         * Returns the total bytes of the BLOB values.
+         * 
+         * @return bytes of the BLOB values
+         */
+        public long getBlobBytes() {
+            return mBlobBytes.get();
+        }
+
+        /**
+         * Returns the approximate percentile of the total time of the
+         * operations.<br>
+         * The value is the upper bound of the bucket of the histogram, which
+         * is a power of two.
+         * 
+         * @param percentile percentile from 0 to 100
+         * @return time in nanoseconds, or {@code 0} if there is no operation
+         */
+        public long getPercentileNanos(final double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += mHistogram.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final double threshold = total * percentile / 100;
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mHistogram.get(i);
+                if (count > 0 && count >= threshold) {
+                    return i >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount() + " total=" + getTotalNanos() + "ns rows="
+                    + getRowCount() + " p50=" + getPercentileNanos(50) + "ns p95="
+                    + getPercentileNanos(95) + "ns";
+        }
+    }
+
+    @Override
+    public void onQuery(final QueryEvent event) {
+        Stats stats = mStats.get(event.getSql());
+        if (stats == null) {
+            final Stats created = new Stats();
+            stats = mStats.putIfAbsent(event.getSql(), created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        stats.add(event);
+    }
+
+    /**
+     * Returns the statistics by the SQL text.
+     * 
+     * @return unmodifiable live view of the statistics
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(mStats);
+    }
+
+    /**
+     * Discards all the statistics.
+     */
+    public void reset() {
+        mStats.clear();
+    }
+}
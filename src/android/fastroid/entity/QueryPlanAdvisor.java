@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the query plans of the queries executed by
+ * {@link DatabaseManager}, and flags the full table scans.
+ * <p>
+ * This is disabled by default; enable this in the debug builds by
+ * {@link #setEnabled(boolean)}. While enabled, each SELECT statement is
+ * explained by {@code EXPLAIN QUERY PLAN} at its first execution, and the
+ * executions of each statement are counted. If the plan scans a table
+ * without an index, the index is suggested from the columns of the table in
+ * the WHERE clause, the join condition and the ORDER BY clause, and a
+ * warning is logged. {@link #getReport()} returns the statements which scan
+ * the tables, in descending order of the executions.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class QueryPlanAdvisor {
+    /** Tag of the log. */
+    private static final String TAG = "fastroid";
+
+    /** Maximum number of the statements to collect. */
+    private static final int MAX_SHAPES = 256;
+
+    /** Pattern of the column names, which may be qualified by the table. */
+    private static final Pattern IDENTIFIER = Pattern
+            .compile("([A-Za-z_][A-Za-z0-9_]*)(?:\\.([A-Za-z_][A-Za-z0-9_]*))?");
+
+    /** Whether the plans are collected. */
+    private static volatile boolean sEnabled;
+
+    /** Collected statements by the SQL text. Guarded by itself. */
+    private static final Map<String, Shape> SHAPES = new HashMap<String, Shape>();
+
+    /**
+     * Query plan and the statistics of a SELECT statement.
+     */
+    public static final class Shape {
+        /** SQL text. */
+        private final String mSql;
+
+        /** Number of the executions. Guarded by this shape. */
+        private long mCount;
+
+        /** Details of the query plan. */
+        private volatile List<String> mPlan = Collections.emptyList();
+
+        /** Tables scanned without index. */
+        private volatile List<String> mScannedTables = Collections.emptyList();
+
+        /** Suggested CREATE INDEX statements. */
+        private volatile List<String> mSuggestions = Collections.emptyList();
+
+        /**
+         * Creates a shape.
+         * 
+         * @param sql SQL text
+         */
+        private Shape(final String sql) {
+            mSql = sql;
+        }
+
+        /**
+         * Returns the SQL text.
+         * 
+         * @return SQL text
+         */
+        public String getSql() {
+            return mSql;
+        }
+
+        /**
+         * Returns the number of the executions.
+         * 
+         * @return number of the executions
+         */
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the details of the query plan.
+         * 
+         * @return details of the steps
+         */
+        public List<String> getPlan() {
+            return mPlan;
+        }
+
+        /**
+         * Returns the tables scanned without index.
+         * 
+         * @return table names
+         */
+        public List<String> getScannedTables() {
+            return mScannedTables;
+        }
+
+        /**
+         * Returns the suggested indexes.
+         * 
+         * @return CREATE INDEX statements
+         */
+        public List<String> getSuggestions() {
+            return mSuggestions;
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + "x " + mSql + " " + mPlan + " -> " + mSuggestions;
+        }
+    }
+
+    /**
+     * Creates the advisor.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private QueryPlanAdvisor() {
+    }
+
+    /**
+     * Enables or disables the collection of the query plans.
+     * 
+     * @param enabled true to collect the query plans
+     */
+    public static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the query plans are collected.
+     * 
+     * @return true if the query plans are collected
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Returns the statements which scan the tables without index, in
+     * descending order of the executions.
+     * 
+     * @return statements with full table scans
+     */
+    public static List<Shape> getReport() {
+        final List<Shape> report = new ArrayList<Shape>();
+        synchronized (SHAPES) {
+            for (Shape shape : SHAPES.values()) {
+                if (!shape.getScannedTables().isEmpty()) {
+                    report.add(shape);
+                }
+            }
+        }
+        Collections.sort(report, new Comparator<Shape>() {
+            @Override
+            public int compare(final Shape lhs, final Shape rhs) {
+                final long l = lhs.getCount();
+                final long r = rhs.getCount();
+                return l < r ? 1 : (l == r ? 0 : -1);
+            }
+        });
+        return report;
+    }
+
+    /**
+     * Discards the collected statements.
+     */
+    public static void clear() {
+        synchronized (SHAPES) {
+            SHAPES.clear();
+        }
+    }
+
+    /**
+     * Counts the execution of the statement, and explains it if it is
+     * executed for the first time.
+     * 
+     * @param db database to execute the statement
+     * @param sql SELECT statement
+     * @param sqlArgs arguments of the statement
+     * @param meta mapping information of the target table
+     * @param joins joined tables
+     * @param whereClause WHERE clause, or {@code null}
+     * @param keysetClause WHERE condition of the keyset pagination, or
+     *            {@code null}
+     * @param orderByClause ORDER BY clause, or {@code null}
+     */
+    static void record(final SQLiteDatabase db, final String sql, final Object[] sqlArgs,
+            final EntityMeta meta, final List<Join> joins, final String whereClause,
+            final String keysetClause, final String orderByClause) {
+        Shape shape;
+        boolean created = false;
+        synchronized (SHAPES) {
+            shape = SHAPES.get(sql);
+            if (shape == null) {
+                if (SHAPES.size() >= MAX_SHAPES) {
+                    return;
+                }
+                shape = new Shape(sql);
+                SHAPES.put(sql, shape);
+                created = true;
+            }
+        }
+        if (created) {
+            explain(db, shape, sqlArgs, meta, joins, whereClause, keysetClause, orderByClause);
+        }
+        synchronized (shape) {
+            shape.mCount++;
+        }
+    }
+
+    /**
+     * Explains the statement, and suggests the indexes for the scanned
+     * tables.
+     * 
+     * @param db database to execute the statement
+     * @param shape statement to explain
+     * @param sqlArgs arguments of the statement
+     * @param meta mapping information of the target table
+     * @param joins joined tables
+     * @param whereClause WHERE clause, or {@code null}
+     * @param keysetClause WHERE condition of the keyset pagination, or
+     *            {@code null}
+     * @param orderByClause ORDER BY clause, or {@code null}
+     */
+    private static void explain(final SQLiteDatabase db, final Shape shape,
+            final Object[] sqlArgs, final EntityMeta meta, final List<Join> joins,
+            final String whereClause, final String keysetClause, final String orderByClause) {
+        final List<String> plan = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = ColumnCodecs.rawQuery(db, "EXPLAIN QUERY PLAN " + shape.mSql, sqlArgs);
+            while (cursor.moveToNext()) {
+                // The detail is the last column in all the versions
+                plan.add(cursor.getString(cursor.getColumnCount() - 1));
+            }
+        } catch (RuntimeException e) {
+            Log.v(TAG, "Cannot explain: " + shape.mSql);
+            return;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        final List<String> scannedTables = new ArrayList<String>();
+        final List<String> suggestions = new ArrayList<String>();
+        for (String detail : plan) {
+            final String tableName = getScannedTable(detail);
+            if (tableName == null) {
+                continue;
+            }
+            scannedTables.add(tableName);
+            final String suggestion = suggestIndex(tableName, meta, joins, whereClause,
+                    keysetClause, orderByClause);
+            if (suggestion != null) {
+                suggestions.add(suggestion);
+            }
+        }
+        shape.mPlan = Collections.unmodifiableList(plan);
+        shape.mScannedTables = Collections.unmodifiableList(scannedTables);
+        shape.mSuggestions = Collections.unmodifiableList(suggestions);
+        if (!scannedTables.isEmpty()) {
+            Log.w(TAG, "Full table scan of " + scannedTables + ": " + shape.mSql
+                    + " suggestions: " + suggestions);
+        }
+    }
+
+    /**
+     * Returns the table which the step of the plan scans without index.
+     * 
+     * @param detail detail of the step, such as {@code SCAN TABLE T} or
+     *            {@code TABLE T} of the old versions of SQLite
+     * @return table name, or {@code null} if the step uses an index
+     */
+    private static String getScannedTable(final String detail) {
+        final String upper = detail.toUpperCase(Locale.ENGLISH);
+        if (upper.contains(" INDEX") || upper.contains("PRIMARY KEY")) {
+            return null;
+        }
+        final String rest;
+        if (upper.startsWith("SCAN TABLE ")) {
+            rest = detail.substring("SCAN TABLE ".length());
+        } else if (upper.startsWith("SCAN ")) {
+            rest = detail.substring("SCAN ".length());
+        } else if (upper.startsWith("TABLE ")) {
+            rest = detail.substring("TABLE ".length());
+        } else {
+            return null;
+        }
+        final int end = rest.indexOf(' ');
+        final String tableName = end < 0 ? rest : rest.substring(0, end);
+        if ("CONSTANT".equalsIgnoreCase(tableName) || "SUBQUERY".equalsIgnoreCase(tableName)) {
+            return null;
+        }
+        return tableName;
+    }
+
+    /**
+     * Suggests the index of the scanned table from its columns in the WHERE
+     * clause, the join condition, the condition of the keyset pagination and
+     * the ORDER BY clause.<br>
+     * The columns of the keyset pagination follow the equality columns, so
+     * that the index seeks to the page and returns the rows in the order.
+     * 
+     * @param tableName scanned table
+     * @param meta mapping information of the target table
+     * @param joins joined tables
+     * @param whereClause WHERE clause, or {@code null}
+     * @param keysetClause WHERE condition of the keyset pagination, or
+     *            {@code null}
+     * @param orderByClause ORDER BY clause, or {@code null}
+     * @return CREATE INDEX statement, or {@code null} if no column is found
+     */
+    private static String suggestIndex(final String tableName, final EntityMeta meta,
+            final List<Join> joins, final String whereClause, final String keysetClause,
+            final String orderByClause) {
+        EntityMeta scanned = null;
+        String joinColumn = null;
+        if (meta.getTableName().equalsIgnoreCase(tableName)) {
+            scanned = meta;
+        } else {
+            for (Join join : joins) {
+                if (join.getTableName().equalsIgnoreCase(tableName)) {
+                    scanned = EntityMeta.of(join.getTableClass());
+                    joinColumn = join.getColumnName();
+                    break;
+                }
+            }
+        }
+        if (scanned == null) {
+            return null;
+        }
+        final Set<String> columns = new LinkedHashSet<String>();
+        addColumns(columns, scanned, whereClause);
+        if (joinColumn != null) {
+            columns.add(joinColumn);
+        }
+        addColumns(columns, scanned, keysetClause);
+        addColumns(columns, scanned, orderByClause);
+        if (columns.isEmpty()) {
+            return null;
+        }
+        final StringBuilder name = new StringBuilder("IDX_").append(scanned.getTableName());
+        final StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            name.append('_').append(column);
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append(column);
+        }
+        return "CREATE INDEX " + name + " ON " + scanned.getTableName() + " (" + list + ")";
+    }
+
+    /**
+     * Adds the columns of the table which appear in the clause.
+     * 
+     * @param columns columns to add
+     * @param meta mapping information of the table
+     * @param clause clause, or {@code null}
+     */
+    private static void addColumns(final Set<String> columns, final EntityMeta meta,
+            final String clause) {
+        if (clause == null) {
+            return;
+        }
+        final Matcher matcher = IDENTIFIER.matcher(clause);
+        while (matcher.find()) {
+            final String columnName;
+            if (matcher.group(2) == null) {
+                columnName = matcher.group(1);
+            } else if (matcher.group(1).equalsIgnoreCase(meta.getTableName())) {
+                columnName = matcher.group(2);
+            } else {
+                continue;
+            }
+            final ColumnMeta column = meta.getColumn(columnName);
+            if (column != null) {
+                columns.add(column.getColumnName());
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import java.lang.reflect.Field;
+
+/**
+ * Immutable description of a relation field({@code ManyToOne} or
+ * {@code OneToMany}) of an entity class.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+final class RelationMeta {
+    /** Relation field of the owner entity. */
+    private final Field mField;
+
+    /** Class of the related entity. */
+    private final Class<?> mTableClass;
+
+    /** Table name of the related entity. */
+    private final String mTableName;
+
+    /** Column name to join on. */
+    private final String mColumnName;
+
+    /** True if the field is a {@code List} of the related entities. */
+    private final boolean mToMany;
+
+    /**
+     * Creates a relation descriptor.
+     * 
+     * @param field relation field of the owner entity
+     * @param tableClass class of the related entity
+     * @param columnName column name to join on
+     * @param toMany true if the field is a {@code List} of the related entities
+     */
+    RelationMeta(final Field field, final Class<?> tableClass, final String columnName,
+            final boolean toMany) {
+        mField = field;
+        mTableClass = tableClass;
+        mTableName = EntityMeta.toDbName(tableClass.getSimpleName());
+        mColumnName = columnName;
+        mToMany = toMany;
+    }
+
+    /**
+     * Returns the relation field.
+     * 
+     * @return relation field
+     */
+    Field getField() {
+        return mField;
+    }
+
+    /**
+     * Returns the name of the relation field.
+     * 
+     * @return field name
+     */
+    String getFieldName() {
+        return mField.getName();
+    }
+
+    /**
+     * Returns the class of the related entity.
+     * 
+     * @return class of the related entity
+     */
+    Class<?> getTableClass() {
+        return mTableClass;
+    }
+
+    /**
+     * Returns the table name of the related entity.
+     * 
+     * @return table name
+     */
+    String getTableName() {
+        return mTableName;
+    }
+
+    /**
+     * Returns the column name to join on.
+     * 
+     * @return column name
+     */
+    String getColumnName() {
+        return mColumnName;
+    }
+
+    /**
+     * Returns whether the relation field is a {@code List} or not.
+     * 
+     * @return true if this is a one-to-many relation
+     */
+    boolean isToMany() {
+        return mToMany;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import android.database.Cursor;
+
+/**
+ * Maps a row of the cursor to an entity without reflection.
+ * <p>
+ * The implementations are generated at compile time for each entity class
+ * which has {@code Column} fields, and named as the binary name of the entity
+ * class followed by {@code $$RowMapper}. {@link DatabaseManager} uses the
+ * generated mapper if it exists, and falls back to reflection otherwise.
+ * 
+ * @param <T> type of the entity
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public interface RowMapper<T> {
+    /** Suffix of the generated class name. */
+    String SUFFIX = "$$RowMapper";
+
+    /**
+     * Returns the column names in the order of the indexes passed to
+     * {@link #map(Cursor, int[], Object)}.
+     * 
+     * @return column names
+     */
+    String[] getColumnNames();
+
+    /**
+     * Creates a new entity.
+     * 
+     * @return new entity
+     */
+    T newInstance();
+
+    /**
+     * Sets the values of the current row of the cursor to the entity.
+     * 
+     * @param cursor the opened cursor
+     * @param columnIndexes the indexes of the cursor for each column, or
+     *            {@code -1} if the column is not selected
+     * @param entity the entity to set values
+     */
+    void map(Cursor cursor, int[] columnIndexes, T entity);
+}
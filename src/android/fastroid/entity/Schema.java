@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.fastroid.entity.annotation.Index;
+import android.fastroid.entity.annotation.Indexes;
+import android.fastroid.entity.annotation.JoinColumn;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the DDL of the tables from the annotations of the entities.
+ * <p>
+ * The column types are the storage types of the codecs of the fields, which
+ * are returned by {@link ColumnCodec#getSqlType()}. A single primary key is
+ * declared as the column constraint, with {@code AUTOINCREMENT} if
+ * {@code Id#autoIncrement()} is true, and the composite primary keys are
+ * declared as the table constraint.
+ * <p>
+ * The indexes are created for the fields and the classes annotated with
+ * {@link Index} or {@link Indexes}. The join columns of the fields annotated
+ * with {@link JoinColumn} are also indexed, so the joins do not scan the
+ * table, unless {@link JoinColumn#index()} is false or the column is already
+ * the first column of another index. This covers the fields which are
+ * referred only by {@code OneToMany#mappedBy()} of the other side as well as
+ * the {@code ManyToOne} and {@code OneToOne} relations.
+ * <p>
+ * Call {@link #create(SQLiteDatabase, Class...)} from
+ * {@code SQLiteOpenHelper#onCreate(SQLiteDatabase)}.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class Schema {
+    /**
+     * Creates the schema.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private Schema() {
+    }
+
+    /**
+     * Creates the tables and the indexes of the entities.
+     * 
+     * @param db writable database
+     * @param entityClasses classes of the entities
+     */
+    public static void create(final SQLiteDatabase db, final Class<?>... entityClasses) {
+        for (Class<?> entityClass : entityClasses) {
+            for (String sql : getCreateStatements(entityClass)) {
+                db.execSQL(sql);
+            }
+        }
+    }
+
+    /**
+     * Drops the tables of the entities, and their indexes.
+     * 
+     * @param db writable database
+     * @param entityClasses classes of the entities
+     */
+    public static void drop(final SQLiteDatabase db, final Class<?>... entityClasses) {
+        for (Class<?> entityClass : entityClasses) {
+            db.execSQL("DROP TABLE IF EXISTS " + EntityMeta.of(entityClass).getTableName());
+        }
+    }
+
+    /**
+     * Returns the CREATE TABLE statement and the CREATE INDEX statements of
+     * the entity.
+     * 
+     * @param entityClass class of the entity
+     * @return statements in the order to execute
+     */
+    public static List<String> getCreateStatements(final Class<?> entityClass) {
+        final EntityMeta meta = EntityMeta.of(entityClass);
+        final List<String> statements = new ArrayList<String>();
+        statements.add(createTableSql(meta));
+        final Set<String> indexedColumns = new HashSet<String>();
+        final ColumnMeta[] idColumns = meta.getIdColumns();
+        if (idColumns.length > 0) {
+            indexedColumns.add(idColumns[0].getColumnName());
+        }
+        final Index classIndex = entityClass.getAnnotation(Index.class);
+        if (classIndex != null) {
+            statements.add(createIndexSql(meta, classIndex, classIndex.fields(),
+                    indexedColumns));
+        }
+        final Indexes classIndexes = entityClass.getAnnotation(Indexes.class);
+        if (classIndexes != null) {
+            for (Index index : classIndexes.value()) {
+                statements.add(createIndexSql(meta, index, index.fields(), indexedColumns));
+            }
+        }
+        for (ColumnMeta column : meta.getColumns()) {
+            final Index index = column.getField().getAnnotation(Index.class);
+            if (index != null) {
+                statements.add(createIndexSql(meta, index, new String[] {
+                    column.getFieldName()
+                }, indexedColumns));
+            }
+        }
+        for (Field field : entityClass.getFields()) {
+            // The owning side of OneToMany may have no relation annotation
+            final JoinColumn joinColumn = field.getAnnotation(JoinColumn.class);
+            if (joinColumn == null || !joinColumn.index()) {
+                continue;
+            }
+            final ColumnMeta column = meta.getColumn(EntityMeta.toDbName(joinColumn.name()));
+            if (column != null && !indexedColumns.contains(column.getColumnName())) {
+                statements.add(createIndexSql(meta, null, new String[] {
+                    column.getFieldName()
+                }, indexedColumns));
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Creates the CREATE TABLE statement.
+     * 
+     * @param meta mapping information of the entity
+     * @return CREATE TABLE statement
+     */
+    private static String createTableSql(final EntityMeta meta) {
+        final ColumnMeta[] idColumns = meta.getIdColumns();
+        final StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
+        sql.append(meta.getTableName()).append(" (");
+        final ColumnMeta[] columns = meta.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            final ColumnMeta column = columns[i];
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(column.getColumnName());
+            if (column.isAutoIncrement()) {
+                if (idColumns.length != 1) {
+                    throw new IllegalArgumentException(
+                            "Auto-increment column must be the only primary key: "
+                                    + column.getFieldName());
+                }
+                sql.append(" INTEGER PRIMARY KEY AUTOINCREMENT");
+                continue;
+            }
+            final String sqlType = ColumnCodecs.getSqlType(column.getField());
+            if (sqlType != null) {
+                sql.append(' ').append(sqlType);
+            }
+            if (column.isId() && idColumns.length == 1) {
+                sql.append(" PRIMARY KEY");
+            }
+        }
+        if (idColumns.length > 1) {
+            sql.append(", PRIMARY KEY (");
+            for (int i = 0; i < idColumns.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(idColumns[i].getColumnName());
+            }
+            sql.append(")");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    /**
+     * Creates the CREATE INDEX statement.
+     * 
+     * @param meta mapping information of the entity
+     * @param index annotation of the index, or {@code null} for the index of
+     *            the join column
+     * @param fieldNames field names of the indexed columns
+     * @param indexedColumns first columns of the indexes, to which the first
+     *            column of this index is added
+     * @return CREATE INDEX statement
+     */
+    private static String createIndexSql(final EntityMeta meta, final Index index,
+            final String[] fieldNames, final Set<String> indexedColumns) {
+        if (fieldNames.length == 0) {
+            throw new IllegalArgumentException("No fields of the index of "
+                    + meta.getEntityClass().getName());
+        }
+        final StringBuilder name = new StringBuilder(meta.getTableName());
+        final StringBuilder columns = new StringBuilder();
+        for (String fieldName : fieldNames) {
+            final ColumnMeta column = getColumn(meta, fieldName);
+            if (columns.length() == 0) {
+                indexedColumns.add(column.getColumnName());
+            } else {
+                columns.append(", ");
+            }
+            columns.append(column.getColumnName());
+            name.append('_').append(column.getColumnName());
+        }
+        final StringBuilder sql = new StringBuilder("CREATE ");
+        if (index != null && index.unique()) {
+            sql.append("UNIQUE ");
+        }
+        sql.append("INDEX IF NOT EXISTS ");
+        if (index != null && index.name().length() > 0) {
+            sql.append(index.name());
+        } else {
+            sql.append("IDX_").append(name);
+        }
+        sql.append(" ON ").append(meta.getTableName());
+        sql.append(" (").append(columns).append(")");
+        return sql.toString();
+    }
+
+    /**
+     * Returns the column of the field.
+     * 
+     * @param meta mapping information of the entity
+     * @param fieldName name of the column field
+     * @return column
+     */
+    private static ColumnMeta getColumn(final EntityMeta meta, final String fieldName) {
+        for (ColumnMeta column : meta.getColumns()) {
+            if (column.getFieldName().equals(fieldName)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("Not a column field: " + fieldName);
+    }
+}
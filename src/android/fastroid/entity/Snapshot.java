@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import java.util.Arrays;
+
+/**
+ * Values of the columns of a {@link Trackable} entity when it was loaded from
+ * the database.
+ * <p>
+ * The values are kept in the database representation. The columns which were
+ * not selected are unknown, and they are always regarded as modified.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class Snapshot {
+    /** Value of the column which was not loaded. */
+    private static final Object NOT_LOADED = new Object();
+
+    /** Mapping information of the entity. */
+    private final EntityMeta mMeta;
+
+    /** Values in the order of {@link EntityMeta#getColumns()}. */
+    private final Object[] mValues;
+
+    /**
+     * Creates a snapshot.
+     * 
+     * @param meta mapping information of the entity
+     * @param values values in the order of the columns
+     */
+    private Snapshot(final EntityMeta meta, final Object[] values) {
+        mMeta = meta;
+        mValues = values;
+    }
+
+    /**
+     * Takes the snapshot of the loaded columns of the entity.
+     * 
+     * @param meta mapping information of the entity
+     * @param entity entity to take the values
+     * @param columnIndexes the cursor indexes for each column, where a
+     *            negative index means the column is not loaded
+     * @return snapshot
+     */
+    static Snapshot take(final EntityMeta meta, final Object entity, final int[] columnIndexes) {
+        final ColumnMeta[] columns = meta.getColumns();
+        final Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columnIndexes[i] < 0) {
+                values[i] = NOT_LOADED;
+            } else {
+                values[i] = toSnapshotValue(columns[i], entity);
+            }
+        }
+        return new Snapshot(meta, values);
+    }
+
+    /**
+     * Returns whether the value of the column differs from the snapshot.
+     * 
+     * @param meta mapping information of the entity
+     * @param columnIndex index of the column in {@link EntityMeta#getColumns()}
+     * @param value current value in the database representation
+     * @return true if the value is modified or unknown
+     */
+    boolean isModified(final EntityMeta meta, final int columnIndex, final Object value) {
+        if (meta != mMeta) {
+            return true;
+        }
+        final Object original = mValues[columnIndex];
+        if (original == NOT_LOADED) {
+            return true;
+        }
+        if (original instanceof byte[] && value instanceof byte[]) {
+            return !Arrays.equals((byte[]) original, (byte[]) value);
+        }
+        return original == null ? value != null : !original.equals(value);
+    }
+
+    /**
+     * Returns the value of the column to keep in the snapshot.<br>
+     * The byte arrays are copied because they can be modified in place.
+     * 
+     * @param column target column
+     * @param entity entity to take the value
+     * @return value in the database representation
+     */
+    private static Object toSnapshotValue(final ColumnMeta column, final Object entity) {
+        final Object value;
+        try {
+            value = column.getCodec().toDatabaseValue(column.getField(), entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package android.fastroid.entity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the SQL text generated by {@link DatabaseManager}.
+ * <p>
+ * The queries which have the same shape(the target class, the joins and the
+ * clauses) reuse the SQL text generated at the first time, so the repeated
+ * queries skip the string assembly.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class SqlCache {
+    /** Default maximum number of the cached SQL. */
+    private static final int DEFAULT_MAX_SIZE = 64;
+
+    /** Maximum number of the cached SQL. */
+    private static int sMaxSize = DEFAULT_MAX_SIZE;
+
+    /** Cached SQL in access order. Guarded by itself. */
+    private static final Map<QueryKey, String> CACHE =
+            new LinkedHashMap<QueryKey, String>(DEFAULT_MAX_SIZE, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<QueryKey, String> eldest) {
+                    return size() > sMaxSize;
+                }
+            };
+
+    /** Number of the cache hits. */
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+
+    /** Number of the cache misses. */
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+    /**
+     * Creates the cache.<br>
+     * This is hidden from outside the class because all the methods are
+     * static.
+     */
+    private SqlCache() {
+    }
+
+    /**
+     * Returns the cached SQL, and counts the hit or the miss.
+     * 
+     * @param key shape of the query
+     * @return cached SQL, or {@code null} if it is not cached
+     */
+    static String get(final QueryKey key) {
+        final String sql;
+        synchronized (CACHE) {
+            sql = CACHE.get(key);
+        }
+        if (sql == null) {
+            MISS_COUNT.incrementAndGet();
+        } else {
+            HIT_COUNT.incrementAndGet();
+        }
+        return sql;
+    }
+
+    /**
+     * Caches the SQL.
+     * 
+     * @param key shape of the query
+     * @param sql SQL text
+     */
+    static void put(final QueryKey key, final String sql) {
+        synchronized (CACHE) {
+            CACHE.put(key, sql);
+        }
+    }
+
+    /**
+     * Sets the maximum number of the cached SQL.<br>
+     * Set {@code 0} to disable the cache.
+     * 
+     * @param maxSize maximum number of the cached SQL
+     */
+    public static void setMaxSize(final int maxSize) {
+        synchronized (CACHE) {
+            sMaxSize = maxSize;
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Removes all the cached SQL, and resets the counters.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+        HIT_COUNT.set(0);
+        MISS_COUNT.set(0);
+    }
+
+    /**
+     * Returns the number of the cache hits.
+     * 
+     * @return number of the cache hits
+     */
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    /**
+     * Returns the number of the cache misses.
+     * 
+     * @return number of the cache misses
+     */
+    public static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+}
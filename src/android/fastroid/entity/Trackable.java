@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+/**
+ * Entity which keeps the values loaded from the database, so that
+ * {@link DatabaseManager#update(android.database.sqlite.SQLiteOpenHelper, Object)}
+ * writes only the modified columns.
+ * <p>
+ * {@link DatabaseManager} sets the {@link Snapshot} when it maps a row to the
+ * entity, and refreshes it when the entity is updated. The implementations
+ * just hold it in a field which is not a {@code Column}. If nothing is
+ * modified, the UPDATE statement is not executed at all.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public interface Trackable {
+    /**
+     * Returns the snapshot set by {@link #setSnapshot(Snapshot)}.
+     * 
+     * @return snapshot, or {@code null} if the entity is not loaded from the
+     *         database
+     */
+    Snapshot getSnapshot();
+
+    /**
+     * Keeps the snapshot of the values in the database.
+     * 
+     * @param snapshot snapshot of the values
+     */
+    void setSnapshot(Snapshot snapshot);
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2011 Soichiro Kashima
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package android.fastroid.entity;
+
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queue which writes the operations of {@link DatabaseManager} later in a
+ * background thread.
+ * <p>
+ * The operations are accepted from any thread without accessing the
+ * database, and a single writer thread executes them in one transaction when
+ * the number of the pending operations reaches the batch size or the oldest
+ * one has waited for the delay. The updates of the same row by the primary
+ * keys are merged into one statement; the later values win.
+ * <p>
+ * The operations are not durable until they are written. Call
+ * {@link #await()} at the points which need them in the database, such as
+ * before the process goes to the background. If a batch fails, it is rolled
+ * back entirely and its exception is thrown by {@link #await()} in every
+ * thread which has not awaited the failed operations yet. Only the latest
+ * failed batches are remembered, so await regularly.
+ * 
+ * @author Soichiro Kashima
+ * @since 2026/10/16
+ */
+public final class WriteBehindQueue {
+    /** Tag for the log. */
+    private static final String TAG = "fastroid";
+
+    /** Default number of the operations to write at once. */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default maximum time in milliseconds an operation waits. */
+    private static final long DEFAULT_DELAY_MILLIS = 500;
+
+    /** Maximum number of the failed batches to remember. */
+    private static final int MAX_FAILED_BATCHES = 32;
+
+    /** Helper to write the operations. */
+    private final SQLiteOpenHelper mHelper;
+
+    /** Number of the pending operations which starts the write. */
+    private final int mBatchSize;
+
+    /** Maximum time in milliseconds an operation waits. */
+    private final long mDelayMillis;
+
+    /** Pending operations in the order of the arrival. Guarded by this. */
+    private List<DatabaseManager> mPending = new ArrayList<DatabaseManager>();
+
+    /** Pending updates by the row key. Guarded by this. */
+    private final Map<List<Object>, DatabaseManager> mPendingUpdates =
+            new HashMap<List<Object>, DatabaseManager>();
+
+    /** Time when the oldest pending operation arrived. Guarded by this. */
+    private long mOldestTime;
+
+    /** Sequence number of the last accepted operation. Guarded by this. */
+    private long mAcceptedSeq;
+
+    /** Sequence number of the last written operation. Guarded by this. */
+    private long mWrittenSeq;
+
+    /** Whether the pending operations are written without waiting. Guarded by this. */
+    private boolean mFlushRequested;
+
+    /** Failed batches in the order of the sequence numbers. Guarded by this. */
+    private final List<FailedBatch> mFailedBatches = new ArrayList<FailedBatch>();
+
+    /** Sequence number of the last operation awaited by each thread. */
+    private final ThreadLocal<long[]> mAwaitedSeq = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /** Whether the queue is closed. Guarded by this. */
+    private boolean mClosed;
+
+    /** Writer thread, or {@code null} if not started yet. Guarded by this. */
+    private Thread mWriter;
+
+    /**
+     * Creates a queue with the default batch size and delay.
+     * 
+     * @param helper helper to write the operations
+     */
+    public WriteBehindQueue(final SQLiteOpenHelper helper) {
+        this(helper, DEFAULT_BATCH_SIZE, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a queue.
+     * 
+     * @param helper helper to write the operations
+     * @param batchSize number of the pending operations which starts the write
+     * @param delayMillis maximum time in milliseconds an operation waits
+     */
+    public WriteBehindQueue(final SQLiteOpenHelper helper, final int batchSize,
+            final long delayMillis) {
+        if (batchSize <= 0 || delayMillis < 0) {
+            throw new IllegalArgumentException("Invalid batchSize or delayMillis: " + batchSize
+                    + ", " + delayMillis);
+        }
+        mHelper = helper;
+        mBatchSize = batchSize;
+        mDelayMillis = delayMillis;
+    }
+
+    /**
+     * Queues to insert the object.
+     * 
+     * @param target object which has values to insert
+     */
+    public void insert(final Object target) {
+        enqueue(DatabaseManager.insert(mHelper, target));
+    }
+
+    /**
+     * Queues to update the row of the object by the primary keys.<br>
+     * The values are taken from the object when this is called.
+     * 
+     * @param target object which has values to update
+     */
+    public void update(final Object target) {
+        enqueue(DatabaseManager.update(mHelper, target));
+    }
+
+    /**
+     * Queues to delete the row of the object by the primary keys.
+     * 
+     * @param target object which has conditions to delete
+     */
+    public void delete(final Object target) {
+        enqueue(DatabaseManager.delete(mHelper, target));
+    }
+
+    /**
+     * Queues the prepared operation instead of calling
+     * {@link DatabaseManager#execute()}.
+     * 
+     * @param operation insert, update or delete operation of the same helper
+     */
+    public void enqueue(final DatabaseManager operation) {
+        if (operation.getHelper() != mHelper) {
+            throw new IllegalArgumentException("The operation uses another helper");
+        }
+        if (!operation.isWrite()) {
+            throw new IllegalArgumentException("The operation is not an insert, update or delete");
+        }
+        final List<Object> rowKey = operation.getRowKey();
+        synchronized (this) {
+            if (mClosed) {
+                throw new IllegalStateException("The queue is closed");
+            }
+            mAcceptedSeq++;
+            if (rowKey != null) {
+                final DatabaseManager pendingUpdate = mPendingUpdates.get(rowKey);
+                if (pendingUpdate != null && operation.isUpdate()) {
+                    pendingUpdate.mergeValues(operation);
+                    return;
+                }
+                // The later updates must not move before this operation
+                mPendingUpdates.remove(rowKey);
+                if (operation.isUpdate()) {
+                    mPendingUpdates.put(rowKey, operation);
+                }
+            }
+            if (mPending.isEmpty()) {
+                mOldestTime = System.currentTimeMillis();
+            }
+            mPending.add(operation);
+            if (mWriter == null) {
+                startWriter();
+            }
+            if (mPending.size() == 1 || mPending.size() >= mBatchSize) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Requests to write the pending operations without waiting for the batch
+     * size or the delay.<br>
+     * This returns immediately; use {@link #await()} to wait for the write.
+     */
+    public synchronized void flush() {
+        mFlushRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes the operations accepted before this call, and waits for them to
+     * be committed.
+     * 
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws RuntimeException if any operation accepted after the previous
+     *             call in the current thread failed
+     */
+    public void await() throws InterruptedException {
+        await(0);
+    }
+
+    /**
+     * Writes the operations accepted before this call, and waits for them to
+     * be committed up to the timeout.
+     * 
+     * @param timeoutMillis maximum time to wait in milliseconds, or {@code 0}
+     *            to wait without timeout
+     * @return true if the operations are written, false if timed out
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws RuntimeException if any operation accepted after the previous
+     *             call in the current thread failed
+     */
+    public synchronized boolean await(final long timeoutMillis) throws InterruptedException {
+        final long[] awaitedSeq = mAwaitedSeq.get();
+        final long fromSeq = awaitedSeq[0];
+        final long targetSeq = mAcceptedSeq;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        mFlushRequested = true;
+        notifyAll();
+        while (mWrittenSeq < targetSeq) {
+            if (timeoutMillis == 0) {
+                wait();
+            } else {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+        }
+        awaitedSeq[0] = targetSeq;
+        for (FailedBatch failedBatch : mFailedBatches) {
+            if (failedBatch.mFromSeq < targetSeq && fromSeq < failedBatch.mToSeq) {
+                throw new RuntimeException("Failed to write the queued operations",
+                        failedBatch.mFailure);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the pending operations and stops the writer thread.<br>
+     * The operations cannot be queued after this call.
+     * 
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            mClosed = true;
+        }
+        await();
+    }
+
+    /**
+     * Returns the number of the operations waiting to be written.
+     * 
+     * @return number of the pending operations
+     */
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Starts the writer thread.<br>
+     * This must be called with the lock of this queue.
+     */
+    private void startWriter() {
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    boolean running = true;
+                    while (running) {
+                        running = writeNextBatch();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    synchronized (WriteBehindQueue.this) {
+                        if (mWriter == Thread.currentThread()) {
+                            mWriter = null;
+                            // Let another thread write the operations left
+                            if (!mPending.isEmpty()) {
+                                startWriter();
+                            }
+                        }
+                    }
+                }
+            }
+        }, "fastroid-write-behind");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Waits for the next batch and writes it in a transaction.
+     * 
+     * @return false if the queue is closed and no operations are left
+     * @throws InterruptedException if the writer thread is interrupted
+     */
+    private boolean writeNextBatch() throws InterruptedException {
+        final List<DatabaseManager> batch;
+        final long batchSeq;
+        synchronized (this) {
+            while (true) {
+                if (mPending.isEmpty()) {
+                    mFlushRequested = false;
+                    if (mClosed) {
+                        return false;
+                    }
+                    wait();
+                    continue;
+                }
+                final long remaining = mOldestTime + mDelayMillis - System.currentTimeMillis();
+                if (mFlushRequested || mClosed || mPending.size() >= mBatchSize
+                        || remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            batch = mPending;
+            batchSeq = mAcceptedSeq;
+            mPending = new ArrayList<DatabaseManager>();
+            mPendingUpdates.clear();
+            mFlushRequested = false;
+        }
+        Throwable failure = null;
+        try {
+            DatabaseManager.inTransaction(mHelper, new TransactionWork<Void>() {
+                @Override
+                public Void run() {
+                    for (DatabaseManager operation : batch) {
+                        operation.execute();
+                    }
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to write " + batch.size() + " operations", e);
+            failure = e;
+        } catch (Error e) {
+            // The waiters are released before the error stops the writer
+            failure = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                if (failure != null) {
+                    mFailedBatches.add(new FailedBatch(mWrittenSeq, batchSeq, failure));
+                    if (mFailedBatches.size() > MAX_FAILED_BATCHES) {
+                        mFailedBatches.remove(0);
+                    }
+                }
+                mWrittenSeq = batchSeq;
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Range of the operations in a failed batch.
+     * 
+     * @author Soichiro Kashima
+     * @since 2026/10/16
+     */
+    private static final class FailedBatch {
+        /** Sequence number of the operation written before this batch. */
+        private final long mFromSeq;
+
+        /** Sequence number of the last operation in this batch. */
+        private final long mToSeq;
+
+        /** Exception which rolled back this batch. */
+        private final Throwable mFailure;
+
+        /**
+         * Creates a failed batch.
+         * 
+         * @param fromSeq sequence number of the operation written before this
+         *            batch
+         * @param toSeq sequence number of the last operation in this batch
+         * @param failure exception which rolled back this batch
+         */
+        FailedBatch(final long fromSeq, final long toSeq, final Throwable failure) {
+            mFromSeq = fromSeq;
+            mToSeq = toSeq;
+            mFailure = failure;
+        }
+    }
+}
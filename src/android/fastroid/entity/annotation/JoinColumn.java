@@ -38,4 +38,9 @@ import java.lang.annotation.Target;
 public @interface JoinColumn {
     /** Column name to join on. */
     String name();
+
+    /**
+     * Set to false not to create the index on the column by {@code Schema}.
+     */
+    boolean index() default true;
 }